@@ -0,0 +1,105 @@
+package proc.sketches;
+
+/**
+ * Implementations of the sigmoid activation sigmoid(x) = 1/(1+e^(-x)) a NeuralNetwork can use.
+ * Every mode states the largest absolute difference from the exact sigmoid over all doubles.
+ */
+public enum Activation {
+    /**
+     * Math.exp based sigmoid, computed by NeuralNetwork.KERNEL.
+     * The SIMD kernel can differ in the last bit, otherwise the result is exact.
+     */
+    EXACT(1e-15) {
+        @Override
+        void apply(double[] nodes, int from, int count) {
+            NeuralNetwork.KERNEL.sigmoid(nodes, from, count);
+        }
+    },
+
+    /**
+     * Linear interpolation in a table holding the sigmoid at steps of 1/64 over [-16, 16],
+     * values outside of that range are clamped to the first or last entry.
+     * Maximal absolute error: 3e-6
+     */
+    TABLE(3e-6) {
+        @Override
+        void apply(double[] nodes, int from, int count) {
+            for (int i = from; i < from + count; i++) {
+                double x = nodes[i];
+                if (x <= TABLE_MIN) {
+                    nodes[i] = SIGMOID_TABLE[0];
+                } else if (x >= TABLE_MAX) {
+                    nodes[i] = SIGMOID_TABLE[SIGMOID_TABLE.length - 1];
+                } else {
+                    double position = (x - TABLE_MIN) * TABLE_STEPS;
+                    int index = (int) position;
+                    double low = SIGMOID_TABLE[index];
+                    nodes[i] = low + (SIGMOID_TABLE[index + 1] - low) * (position - index);
+                }
+            }
+        }
+    },
+
+    /**
+     * sigmoid(x) = (1 + tanh(x/2)) / 2, where tanh is replaced by its [7/6] Pade approximant
+     * (from the continued fraction of tanh) and clamped to 1 or -1 for |x/2| >= 5.
+     * Only uses multiplications and one division. Maximal absolute error: 5e-5
+     */
+    RATIONAL(5e-5) {
+        @Override
+        void apply(double[] nodes, int from, int count) {
+            for (int i = from; i < from + count; i++) {
+                double y = 0.5 * nodes[i];
+                double tanh;
+                if (y >= 5) {
+                    tanh = 1;
+                } else if (y <= -5) {
+                    tanh = -1;
+                } else {
+                    double y2 = y * y;
+                    tanh = y * (135135 + y2 * (17325 + y2 * (378 + y2)))
+                            / (135135 + y2 * (62370 + y2 * (3150 + y2 * 28)));
+                    tanh = Math.max(-1, Math.min(1, tanh));
+                }
+                nodes[i] = 0.5 + 0.5 * tanh;
+            }
+        }
+    };
+
+    private static final double TABLE_MIN = -16;
+    private static final double TABLE_MAX = 16;
+    private static final int TABLE_STEPS = 64;        //number of table entries per unit of x
+    private static final double[] SIGMOID_TABLE = new double[(int) (TABLE_MAX - TABLE_MIN) * TABLE_STEPS + 1];
+
+    static {
+        for (int i = 0; i < SIGMOID_TABLE.length; i++) {
+            SIGMOID_TABLE[i] = 1 / (1 + Math.exp(-1 * (TABLE_MIN + (double) i / TABLE_STEPS)));
+        }
+    }
+
+    private final double maxError;
+
+    Activation(double maxError) {
+        this.maxError = maxError;
+    }
+
+    /**
+     * Applies the sigmoid to count nodes starting at from
+     */
+    abstract void apply(double[] nodes, int from, int count);
+
+    /**
+     * returns the largest absolute difference between this mode and the exact sigmoid
+     */
+    public double maxError() {
+        return maxError;
+    }
+
+    /**
+     * The mode new networks start with, set with -Dproc.activation=EXACT|TABLE|RATIONAL
+     */
+    static Activation defaultMode() {
+        String mode = System.getProperty("proc.activation");
+        return mode == null ? EXACT : valueOf(mode.toUpperCase());
+    }
+}
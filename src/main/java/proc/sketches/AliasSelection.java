@@ -0,0 +1,69 @@
+package proc.sketches;
+
+import java.util.SplittableRandom;
+
+/**
+ * Fitness proportionate selection with Walker's alias method (Vose's construction).
+ * Every player gets a column of height 1 holding its own share of the fitness and, on top of that,
+ * part of the share of one other player (its alias). Building the table takes O(n), every pick O(1):
+ * one random column and one coin flip.
+ */
+class AliasSelection implements SelectionStrategy {
+    private double[] probability;   //chance that a pick of column i returns i instead of alias[i]
+    private int[] alias;            //player filling the rest of column i
+    private int[] small;            //work list of the columns below height 1
+    private int[] large;            //work list of the columns at or above height 1
+    private int size;               //number of players in the population
+
+    @Override
+    public void prepare(Player[] players) {
+        size = players.length;
+        if (probability == null || probability.length < size) {
+            probability = new double[size];
+            alias = new int[size];
+            small = new int[size];
+            large = new int[size];
+        }
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            total += Math.max(0, players[i].getFitness());
+        }
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < size; i++) {
+            //scale the fitness so the average column has height 1
+            probability[i] = total > 0 ? Math.max(0, players[i].getFitness()) * size / total : 1;
+            alias[i] = i;
+            if (probability[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        //fill every small column with the excess of a large column
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            alias[less] = more;
+            probability[more] -= 1 - probability[less];
+            if (probability[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        //what is left over is height 1 apart from rounding errors
+        while (largeCount > 0) {
+            probability[large[--largeCount]] = 1;
+        }
+        while (smallCount > 0) {
+            probability[small[--smallCount]] = 1;
+        }
+    }
+
+    @Override
+    public int select(SplittableRandom random) {
+        int column = random.nextInt(size);
+        return random.nextDouble() < probability[column] ? column : alias[column];
+    }
+}
@@ -0,0 +1,137 @@
+package proc.sketches;
+
+/**
+ * Evaluates the brains of many players in one pass. Every tick the sensor values of all
+ * players that still have to think are gathered as rows of one input matrix, after which
+ * all brains are evaluated together and the chosen directions are written back to the players.
+ * The weights are read in the same bias-first layout and the same order as
+ * NeuralNetwork.feedForward, so every decision is identical to the one of Player.think.
+ */
+class BatchedInference {
+    private int inputNodes;     //number of input nodes of every brain
+    private int outputNodes;    //number of output nodes of every brain
+
+    private int size;           //number of rows gathered since the last run
+    private Player[] players;   //player owning each row
+    private NeuralNetwork[] brains; //brain that has to be evaluated for each row
+
+    //input matrix with one row of (inputNodes + 1) values per player, the first value is the bias node
+    private double[] inputs;
+    //input values (without the bias node) and output values of a row evaluated by compiled code
+    private double[] rowInput;
+    private double[] rowOutput;
+    //activations of the layer being read and the layer being written for the row being evaluated
+    private double[] current;
+    private double[] next;
+
+    /**
+     * Creates an engine for brains with the given topology
+     * @param input number of input nodes
+     * @param hidden number of nodes per hidden layer
+     * @param output number of output nodes
+     * @param capacity expected number of players per tick, the engine grows when more are added
+     */
+    BatchedInference(int input, int[] hidden, int output, int capacity) {
+        inputNodes = input;
+        outputNodes = output;
+        int width = Math.max(input, output) + 1;
+        for (int nodes : hidden) {
+            width = Math.max(width, nodes + 1);
+        }
+        capacity = Math.max(capacity, 1);
+        players = new Player[capacity];
+        brains = new NeuralNetwork[capacity];
+        inputs = new double[capacity * (inputNodes + 1)];
+        rowInput = new double[inputNodes];
+        rowOutput = new double[outputNodes];
+        current = new double[width];
+        next = new double[width];
+    }
+
+    /**
+     * Adds a player that has to think this tick
+     * @param player the player whose brain should be evaluated
+     * @return the index in getInputs() where the sensor values of this player should be written
+     */
+    int add(Player player) {
+        if (size == players.length) {
+            grow();
+        }
+        players[size] = player;
+        brains[size] = player.readBrain();
+        int offset = size * (inputNodes + 1);
+        inputs[offset] = 1;
+        size++;
+        return offset + 1;
+    }
+
+    /**
+     * returns the input matrix, only valid until the next call to add
+     */
+    double[] getInputs() {
+        return inputs;
+    }
+
+    /**
+     * returns the number of players waiting for a decision
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Evaluates all gathered brains and lets every player take the decision of its brain.
+     * The rows are evaluated one after the other through all layers: every row has its own
+     * weights, so there are no weights that could be shared between rows. Brains that have a
+     * compiled feedforward (see NetworkCompiler) are evaluated by the generated code, the others
+     * by the kernel.
+     */
+    void run() {
+        int stride = inputNodes + 1;
+        for (int row = 0; row < size; row++) {
+            NeuralNetwork brain = brains[row];
+            CompiledNetwork compiled = brain.compiledNetwork();
+            if (compiled != null) {
+                System.arraycopy(inputs, row * stride + 1, rowInput, 0, inputNodes);
+                compiled.feedForward(brain.weightData(), rowInput, rowOutput);
+                players[row].decide(rowOutput, 0);
+                players[row] = null;
+                brains[row] = null;
+                continue;
+            }
+            double[] in = current;
+            double[] out = next;
+            System.arraycopy(inputs, row * stride, in, 0, stride);
+            for (int k = 0; k < brain.layers - 1; k++) {
+                int rows = brain.layerSizes[k + 1];
+                out[0] = 1;
+                NeuralNetwork.KERNEL.dense(brain.weightData(), brain.layerOffsets[k], in, 0,
+                        brain.layerSizes[k] + 1, out, 1, rows);
+                brain.activation(out, 1, rows);
+                double[] swap = in;
+                in = out;
+                out = swap;
+            }
+            players[row].decide(in, 1);
+            players[row] = null;
+            brains[row] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * doubles the number of rows the engine can hold
+     */
+    private void grow() {
+        int capacity = players.length * 2;
+        Player[] newPlayers = new Player[capacity];
+        NeuralNetwork[] newBrains = new NeuralNetwork[capacity];
+        double[] newInputs = new double[capacity * (inputNodes + 1)];
+        System.arraycopy(players, 0, newPlayers, 0, size);
+        System.arraycopy(brains, 0, newBrains, 0, size);
+        System.arraycopy(inputs, 0, newInputs, 0, size * (inputNodes + 1));
+        players = newPlayers;
+        brains = newBrains;
+        inputs = newInputs;
+    }
+}
@@ -0,0 +1,187 @@
+package proc.sketches;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Binary file format for the weights of a neural network. All values are little-endian:
+ *
+ *   int    magic "AIVB"
+ *   int    version (1)
+ *   int    number of layers n (input, hidden layers and output)
+ *   int[n] number of nodes per layer (without bias nodes)
+ *   long   CRC32 checksum of the weight bytes
+ *   padding to a multiple of 8 bytes
+ *   double weights of every layer in the flat layout of NeuralNetwork (row by row, bias column first)
+ *
+ * Files are read through a memory map of the file, so the header and checksum are checked and the
+ * weights are decoded without parsing or a read buffer. This is not zero-copy: the networks compute
+ * on a double[] on the heap, so the weights are copied once from the mapped pages into that array.
+ */
+class BrainFile {
+    static final int MAGIC = 'A' | 'I' << 8 | 'V' << 16 | 'B' << 24;
+    static final int VERSION = 1;
+
+    /**
+     * returns the size in bytes of the header for a network with the given number of layers
+     */
+    private static int headerSize(int layers) {
+        int size = 4 + 4 + 4 + 4 * layers + 8;
+        return (size + 7) / 8 * 8;
+    }
+
+    /**
+     * Writes the layer sizes and weights of a network to a binary file, replacing the file if it exists
+     * @param layerSizes number of nodes per layer
+     * @param weights flat weights of the network
+     * @param fileName name of the file to write to
+     */
+    static void write(int[] layerSizes, double[] weights, String fileName) throws IOException {
+        int header = headerSize(layerSizes.length);
+        ByteBuffer buffer = ByteBuffer.allocate(header + 8 * weights.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(header);
+        buffer.asDoubleBuffer().put(weights);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), header, 8 * weights.length);
+
+        buffer.position(0);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(layerSizes.length);
+        for (int size : layerSizes) {
+            buffer.putInt(size);
+        }
+        buffer.putLong(crc.getValue());
+        buffer.rewind();
+
+        FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Maps a binary weights file into memory, checks that it belongs to a network with the given layer
+     * sizes and that its checksum is correct, and returns a read-only view of the weights in the file
+     * @param layerSizes number of nodes per layer of the network that will use the weights
+     * @param fileName name of the file to read from
+     */
+    static DoubleBuffer map(int[] layerSizes, String fileName) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        MappedByteBuffer file;
+        try {
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            //the mapping stays valid after the channel is closed
+            channel.close();
+        }
+        file.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (file.remaining() < 12 || file.getInt(0) != MAGIC) {
+            throw new IOException(fileName + " is not a binary weights file");
+        }
+        if (file.getInt(4) != VERSION) {
+            throw new IOException(fileName + " has unsupported version " + file.getInt(4));
+        }
+        int layers = file.getInt(8);
+        if (layers != layerSizes.length) {
+            throw new IOException(fileName + " has " + layers + " layers, expected " + layerSizes.length);
+        }
+        int weightCount = 0;
+        for (int k = 0; k < layers; k++) {
+            int size = file.getInt(12 + 4 * k);
+            if (size != layerSizes[k]) {
+                throw new IOException(fileName + " has " + size + " nodes in layer " + k + ", expected " + layerSizes[k]);
+            }
+            if (k > 0) {
+                weightCount += layerSizes[k] * (layerSizes[k - 1] + 1);
+            }
+        }
+        long checksum = file.getLong(12 + 4 * layers);
+        int header = headerSize(layers);
+        if (file.capacity() != header + 8L * weightCount) {
+            throw new IOException(fileName + " does not contain " + weightCount + " weights");
+        }
+
+        file.position(header);
+        ByteBuffer weightBytes = file.slice().order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 crc = new CRC32();
+        crc.update(weightBytes.duplicate());
+        if (crc.getValue() != checksum) {
+            throw new IOException(fileName + " is corrupted: checksum does not match");
+        }
+        return weightBytes.asDoubleBuffer().asReadOnlyBuffer();
+    }
+
+    /**
+     * returns whether the file starts with the magic number of the binary format
+     */
+    static boolean isBinary(String fileName) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        try {
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                //keep reading until the first 4 bytes are read or the file ends
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads weights from the old text format written by earlier versions of saveWeights
+     * (weights.txt, PUWeights.txt): one line per row of a weight layer with the weights separated
+     * by spaces, and an empty line after every layer
+     * @param fileName name of the file to read from
+     * @return the weights of every layer, one array per row
+     */
+    static double[][][] importText(String fileName) throws IOException {
+        ArrayList<double[][]> layers = new ArrayList<double[][]>();
+        ArrayList<double[]> rows = new ArrayList<double[]>();
+        BufferedReader reader = new BufferedReader(new FileReader(fileName));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    String[] values = line.split("\\s+");
+                    double[] row = new double[values.length];
+                    for (int i = 0; i < values.length; i++) {
+                        try {
+                            row[i] = Double.parseDouble(values[i]);
+                        } catch (NumberFormatException e) {
+                            throw new IOException(fileName + " contains " + values[i] + " instead of a weight", e);
+                        }
+                    }
+                    rows.add(row);
+                } else if (!rows.isEmpty()) {
+                    layers.add(rows.toArray(new double[rows.size()][]));
+                    rows.clear();
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (!rows.isEmpty()) {
+            layers.add(rows.toArray(new double[rows.size()][]));
+        }
+        return layers.toArray(new double[layers.size()][][]);
+    }
+}
@@ -0,0 +1,477 @@
+package proc.sketches;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Periodic snapshots of a Genetics population, so a long training run can be resumed after the process
+ * died. A snapshot holds every genome, the scores of the last played generation, the generation
+ * counter, the high score and the seed the random choices of the population are derived from.
+ *
+ * The brains are taken as copy-on-write copies, which costs nothing, and written to disk on a
+ * background thread while the population evolves on. A file is first written under a temporary name
+ * and then renamed, so a checkpoint file is always complete. With delta encoding a checkpoint only
+ * stores the weights that changed since the previous checkpoint, every fullInterval-th checkpoint is
+ * complete again to keep the chain of files short.
+ *
+ * File format, all values little-endian:
+ *
+ *   int    magic "AIVC"
+ *   int    version (1)
+ *   int    kind: 0 complete, 1 delta
+ *   int    generation
+ *   int    generation of the checkpoint the delta is based on (-1 when complete)
+ *   long   seed
+ *   int    high score
+ *   float  average score
+ *   int    population size p
+ *   int    radius
+ *   int    tile size
+ *   int    number of layers n
+ *   int[n] number of nodes per layer (without bias nodes)
+ *   int[p] scores of the last played generation
+ *   long   CRC32 checksum of everything after the header
+ *   padding to a multiple of 8 bytes
+ * complete: double[p * w] weights of every genome in the flat layout of NeuralNetwork
+ * delta:    long[p * ceil(w / 64)] bit set of the changed weights of every genome
+ *           long   number of changed weights c
+ *           double[c] the changed weights, in order
+ */
+class Checkpoint {
+    static final int MAGIC = 'A' | 'I' << 8 | 'V' << 16 | 'C' << 24;
+    static final int VERSION = 1;
+
+    private static final int COMPLETE = 0;
+    private static final int DELTA = 1;
+
+    /**
+     * The state of a population at one generation
+     */
+    private static class Snapshot {
+        int generation;
+        long seed;
+        int highScore;
+        float score;
+        int radius;
+        int tileSize;
+        int[] layerSizes;
+        int[] scores;
+        double[][] weights;     //weights of every genome, never changed (copy-on-write)
+    }
+
+    private String prefix;          //checkpoints are written to prefix-<generation>.ckpt
+    private int interval;           //number of generations between two checkpoints
+    private boolean delta;          //whether checkpoints are delta encoded against the previous one
+    private int fullInterval;       //every fullInterval-th checkpoint is complete
+    private ExecutorService writer; //writes the checkpoints one after another in the background
+
+    //only used by the writer thread
+    private Snapshot previous;              //last written checkpoint
+    private int sinceComplete;              //checkpoints written since the last complete one
+    private ArrayList<String> chain;        //files needed to resume from the last written checkpoint
+
+    /**
+     * @param prefix path and start of the name of the checkpoint files
+     * @param interval number of generations between two checkpoints
+     * @param delta whether checkpoints only store the weights that changed since the previous one
+     * @param fullInterval every fullInterval-th checkpoint is complete when delta encoding is used
+     */
+    Checkpoint(String prefix, int interval, boolean delta, int fullInterval) {
+        if (interval < 1 || fullInterval < 1) {
+            throw new IllegalArgumentException("The intervals of the checkpoints must be at least 1");
+        }
+        this.prefix = prefix;
+        this.interval = interval;
+        this.delta = delta;
+        this.fullInterval = fullInterval;
+        chain = new ArrayList<String>();
+        writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Takes a checkpoint of the population when its generation is a multiple of the interval,
+     * to be called after every Genetics.evolve. Returns right away, the file is written in the background
+     */
+    void offer(Genetics genetics) {
+        if (genetics.getGeneration() % interval != 0) {
+            return;
+        }
+        NeuralNetwork[] brains = genetics.getBrains();
+        final Snapshot snapshot = new Snapshot();
+        snapshot.generation = genetics.getGeneration();
+        snapshot.seed = genetics.getSeed();
+        snapshot.highScore = genetics.getHighScore();
+        snapshot.score = genetics.getScore();
+        snapshot.radius = genetics.getRadius();
+        snapshot.tileSize = genetics.getTileSize();
+        snapshot.layerSizes = brains[0].layerSizes.clone();
+        snapshot.scores = genetics.getLastScores();
+        snapshot.weights = new double[brains.length][];
+        for (int i = 0; i < brains.length; i++) {
+            snapshot.weights[i] = brains[i].weightData();
+        }
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(snapshot);
+                } catch (IOException e) {
+                    System.out.println("Error: could not write the checkpoint of generation " + snapshot.generation);
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until every checkpoint taken so far is written
+     */
+    void close() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    static String fileName(String prefix, int generation) {
+        return prefix + "-" + generation + ".ckpt";
+    }
+
+    private void write(Snapshot snapshot) throws IOException {
+        boolean asDelta = delta && previous != null && sinceComplete + 1 < fullInterval
+                && previous.weights.length == snapshot.weights.length;
+        String fileName = fileName(prefix, snapshot.generation);
+        ByteBuffer buffer = asDelta ? encodeDelta(snapshot, previous) : encodeComplete(snapshot);
+
+        Path file = Paths.get(fileName);
+        Path temporary = Paths.get(fileName + ".tmp");
+        FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        if (asDelta) {
+            sinceComplete++;
+        } else {
+            //the files of the previous chain are not needed anymore
+            for (String old : chain) {
+                if (!old.equals(fileName)) {
+                    Files.deleteIfExists(Paths.get(old));
+                }
+            }
+            chain.clear();
+            sinceComplete = 0;
+        }
+        chain.add(fileName);
+        //the weights of the previous checkpoint are only kept to encode the next delta
+        previous = delta ? snapshot : null;
+    }
+
+    /**
+     * returns the size in bytes of the header for the given population size and number of layers
+     */
+    private static int headerSize(int popSize, int layers) {
+        int size = 4 * 5 + 8 + 4 * 2 + 4 * 4 + 4 * layers + 4 * popSize + 8;
+        return (size + 7) / 8 * 8;
+    }
+
+    private static int weightCount(int[] layerSizes) {
+        int count = 0;
+        for (int k = 1; k < layerSizes.length; k++) {
+            count += layerSizes[k] * (layerSizes[k - 1] + 1);
+        }
+        return count;
+    }
+
+    /**
+     * returns the number of bytes of a checkpoint with the given header and body,
+     * failing when they do not fit in one buffer
+     */
+    private static int fileSize(int header, long body) throws IOException {
+        long size = header + body;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("A checkpoint of " + size + " bytes does not fit in one buffer");
+        }
+        return (int) size;
+    }
+
+    private static ByteBuffer encodeComplete(Snapshot snapshot) throws IOException {
+        int popSize = snapshot.weights.length;
+        int header = headerSize(popSize, snapshot.layerSizes.length);
+        int weightCount = weightCount(snapshot.layerSizes);
+        ByteBuffer buffer = ByteBuffer.allocate(fileSize(header, 8L * popSize * weightCount))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(header);
+        DoubleBuffer weights = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        for (double[] genome : snapshot.weights) {
+            weights.put(genome);
+        }
+        writeHeader(buffer, snapshot, COMPLETE, -1, header);
+        return buffer;
+    }
+
+    private static ByteBuffer encodeDelta(Snapshot snapshot, Snapshot base) throws IOException {
+        int popSize = snapshot.weights.length;
+        int header = headerSize(popSize, snapshot.layerSizes.length);
+        int weightCount = weightCount(snapshot.layerSizes);
+        int words = (weightCount + 63) / 64;
+
+        //the bit sets alone have to fit, the changed weights are checked once they are counted
+        fileSize(header, 8L * popSize * words);
+        long[] changedBits = new long[popSize * words];
+        long changed = 0;
+        for (int g = 0; g < popSize; g++) {
+            double[] genome = snapshot.weights[g];
+            double[] old = base.weights[g];
+            //identical arrays are shared copies of a brain that did not change
+            if (genome == old) {
+                continue;
+            }
+            for (int i = 0; i < weightCount; i++) {
+                if (Double.doubleToRawLongBits(genome[i]) != Double.doubleToRawLongBits(old[i])) {
+                    changedBits[g * words + (i >>> 6)] |= 1L << i;
+                    changed++;
+                }
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(fileSize(header, 8L * changedBits.length + 8 + 8L * changed))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(header);
+        ByteBuffer body = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        body.asLongBuffer().put(changedBits);
+        body.position(8 * changedBits.length);
+        body.putLong(changed);
+        DoubleBuffer values = body.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        for (int g = 0; g < popSize; g++) {
+            for (int w = 0; w < words; w++) {
+                long bits = changedBits[g * words + w];
+                while (bits != 0) {
+                    int i = 64 * w + Long.numberOfTrailingZeros(bits);
+                    values.put(snapshot.weights[g][i]);
+                    bits &= bits - 1;
+                }
+            }
+        }
+        writeHeader(buffer, snapshot, DELTA, base.generation, header);
+        return buffer;
+    }
+
+    private static void writeHeader(ByteBuffer buffer, Snapshot snapshot, int kind, int baseGeneration, int header) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), header, buffer.capacity() - header);
+
+        buffer.position(0);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(kind);
+        buffer.putInt(snapshot.generation);
+        buffer.putInt(baseGeneration);
+        buffer.putLong(snapshot.seed);
+        buffer.putInt(snapshot.highScore);
+        buffer.putFloat(snapshot.score);
+        buffer.putInt(snapshot.weights.length);
+        buffer.putInt(snapshot.radius);
+        buffer.putInt(snapshot.tileSize);
+        buffer.putInt(snapshot.layerSizes.length);
+        for (int size : snapshot.layerSizes) {
+            buffer.putInt(size);
+        }
+        for (int score : snapshot.scores) {
+            buffer.putInt(score);
+        }
+        buffer.putLong(crc.getValue());
+        buffer.rewind();
+    }
+
+    /**
+     * Continues a population from a checkpoint file. The file is memory mapped and the weights are
+     * copied straight into the networks; a delta checkpoint first loads the checkpoint it is based on,
+     * which has to be in the same directory
+     * @param fileName checkpoint file written by a Checkpoint
+     * @return the population, about to play the generation of the checkpoint
+     */
+    static Genetics resume(String fileName) throws IOException {
+        MappedByteBuffer file = map(fileName);
+        int generation = file.getInt(12);
+        long seed = file.getLong(20);
+        int highScore = file.getInt(28);
+        float score = file.getFloat(32);
+        int radius = file.getInt(40);
+        int tileSize = file.getInt(44);
+        NeuralNetwork[] brains = readBrains(fileName, file);
+        return new Genetics(radius, tileSize, brains, generation, seed, highScore, score, readScores(file));
+    }
+
+    /**
+     * returns the scores of the last played generation stored in the header of a checkpoint
+     */
+    private static int[] readScores(MappedByteBuffer file) {
+        int[] scores = new int[file.getInt(36)];
+        int first = 52 + 4 * file.getInt(48);
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = file.getInt(first + 4 * i);
+        }
+        return scores;
+    }
+
+    private static NeuralNetwork[] readBrains(String fileName, MappedByteBuffer file) throws IOException {
+        int kind = file.getInt(8);
+        int generation = file.getInt(12);
+        int baseGeneration = file.getInt(16);
+        int popSize = file.getInt(36);
+        int[] layerSizes = new int[file.getInt(48)];
+        for (int k = 0; k < layerSizes.length; k++) {
+            layerSizes[k] = file.getInt(52 + 4 * k);
+        }
+        int weightCount = weightCount(layerSizes);
+        long checksum = file.getLong(52 + 4 * layerSizes.length + 4 * popSize);
+
+        file.position(headerSize(popSize, layerSizes.length));
+        ByteBuffer body = file.slice().order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        if (crc.getValue() != checksum) {
+            throw new IOException(fileName + " is corrupted: checksum does not match");
+        }
+
+        if (kind == COMPLETE) {
+            if (body.capacity() != 8L * popSize * weightCount) {
+                throw new IOException(fileName + " does not contain " + popSize + " genomes");
+            }
+            int[] hidden = new int[layerSizes.length - 2];
+            System.arraycopy(layerSizes, 1, hidden, 0, hidden.length);
+            NeuralNetwork[] brains = new NeuralNetwork[popSize];
+            DoubleBuffer weights = body.asDoubleBuffer();
+            for (int g = 0; g < popSize; g++) {
+                brains[g] = new NeuralNetwork(layerSizes[0], hidden, layerSizes[layerSizes.length - 1]);
+                weights.get(brains[g].replaceableWeights());
+            }
+            return brains;
+        }
+        if (kind != DELTA) {
+            throw new IOException(fileName + " has unknown kind " + kind);
+        }
+
+        String baseName = fileName(basePrefix(fileName, generation), baseGeneration);
+        NeuralNetwork[] brains = readBrains(baseName, map(baseName));
+        if (brains.length != popSize || brains[0].weightData().length != weightCount) {
+            throw new IOException(fileName + " does not belong to " + baseName);
+        }
+        int words = (weightCount + 63) / 64;
+        long bitSetBytes = 8L * popSize * words;
+        if (bitSetBytes + 8 > body.capacity()) {
+            throw new IOException(fileName + " does not contain the changed weights of " + popSize + " genomes");
+        }
+        LongBuffer changedBits = body.asLongBuffer();
+        long changed = body.getLong((int) bitSetBytes);
+        body.position((int) bitSetBytes + 8);
+        DoubleBuffer values = body.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        if (values.remaining() != changed) {
+            throw new IOException(fileName + " does not contain " + changed + " changed weights");
+        }
+        for (int g = 0; g < popSize; g++) {
+            //the brains were just read and are not shared, so their array still holds the base weights
+            double[] weights = brains[g].replaceableWeights();
+            for (int w = 0; w < words; w++) {
+                long bits = changedBits.get(g * words + w);
+                while (bits != 0) {
+                    weights[64 * w + Long.numberOfTrailingZeros(bits)] = values.get();
+                    bits &= bits - 1;
+                }
+            }
+        }
+        return brains;
+    }
+
+    private static MappedByteBuffer map(String fileName) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        MappedByteBuffer file;
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(fileName + " is too large to be mapped as one buffer");
+            }
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            //the mapping stays valid after the channel is closed
+            channel.close();
+        }
+        file.order(ByteOrder.LITTLE_ENDIAN);
+        if (file.capacity() < 52 || file.getInt(0) != MAGIC) {
+            throw new IOException(fileName + " is not a checkpoint file");
+        }
+        if (file.getInt(4) != VERSION) {
+            throw new IOException(fileName + " has unsupported version " + file.getInt(4));
+        }
+        return file;
+    }
+
+    /**
+     * returns the prefix of a checkpoint file name written by fileName
+     */
+    private static String basePrefix(String fileName, int generation) throws IOException {
+        String suffix = "-" + generation + ".ckpt";
+        if (!fileName.endsWith(suffix)) {
+            throw new IOException(fileName + " is a delta checkpoint that was renamed, its base can not be found");
+        }
+        return fileName.substring(0, fileName.length() - suffix.length());
+    }
+
+    /**
+     * returns the checkpoint file with the highest generation for the prefix, or null when there is none
+     */
+    static String latest(String prefix) {
+        File start = new File(prefix);
+        File directory = start.getAbsoluteFile().getParentFile();
+        String name = start.getName() + "-";
+        String[] files = directory.list();
+        String latest = null;
+        int latestGeneration = -1;
+        if (files == null) {
+            return null;
+        }
+        for (String file : files) {
+            if (file.startsWith(name) && file.endsWith(".ckpt")) {
+                try {
+                    int generation = Integer.parseInt(file.substring(name.length(), file.length() - 5));
+                    if (generation > latestGeneration) {
+                        latestGeneration = generation;
+                        latest = new File(directory, file).getPath();
+                    }
+                } catch (NumberFormatException e) {
+                    //not a checkpoint of this prefix
+                }
+            }
+        }
+        return latest;
+    }
+}
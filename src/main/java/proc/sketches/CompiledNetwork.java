@@ -0,0 +1,17 @@
+package proc.sketches;
+
+/**
+ * Feedforward of one network topology, generated by NetworkCompiler as straight-line code.
+ * Implementations have no state, so one instance serves every network with that topology.
+ * Public because the generated classes can be defined in their own class loader.
+ */
+public interface CompiledNetwork {
+
+    /**
+     * Feedforward algorithm with the exact sigmoid, giving the same output as NeuralNetwork.feedForward
+     * @param weights flat weights of the network (row by row, bias column first)
+     * @param input values of the input nodes
+     * @param output array receiving the values of the output nodes
+     */
+    void feedForward(double[] weights, double[] input, double[] output);
+}
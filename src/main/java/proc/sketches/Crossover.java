@@ -0,0 +1,36 @@
+package proc.sketches;
+
+import java.util.SplittableRandom;
+
+/**
+ * Uniform crossover working on flat weights arrays. Every weight of the child is taken from one of
+ * the two parents with equal chance. The choices for 64 weights come from the bits of one random
+ * long, and the chosen weight is selected with bit operations instead of a branch.
+ */
+final class Crossover {
+
+    private Crossover() {
+    }
+
+    /**
+     * Writes the crossover of two parents into the child array. The parents are only read,
+     * the child may be the same array as one of the parents
+     * @param parent1 weights of the first parent, taken where the random bit is 0
+     * @param parent2 weights of the second parent, taken where the random bit is 1
+     * @param child array receiving the weights of the child
+     * @param random random stream to draw from
+     */
+    static void blend(double[] parent1, double[] parent2, double[] child, SplittableRandom random) {
+        for (int start = 0; start < child.length; start += 64) {
+            long bits = random.nextLong();
+            int end = Math.min(start + 64, child.length);
+            for (int i = start; i < end; i++) {
+                //all ones when the weight comes from parent2, all zeros otherwise
+                long mask = -((bits >>> (i - start)) & 1L);
+                long weight1 = Double.doubleToRawLongBits(parent1[i]);
+                long weight2 = Double.doubleToRawLongBits(parent2[i]);
+                child[i] = Double.longBitsToDouble(weight1 ^ ((weight1 ^ weight2) & mask));
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package proc.sketches;
+
+import java.util.SplittableRandom;
+
+/**
+ * Fitness proportionate selection with a binary search in the running sums of the fitness.
+ * Building the sums takes O(n), every pick O(log n).
+ */
+class CumulativeSelection implements SelectionStrategy {
+    private double[] cumulative;    //cumulative[i] is the sum of the fitness of players 0 to i
+    private int size;               //number of players in the population
+
+    @Override
+    public void prepare(Player[] players) {
+        size = players.length;
+        if (cumulative == null || cumulative.length < size) {
+            cumulative = new double[size];
+        }
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += Math.max(0, players[i].getFitness());
+            cumulative[i] = sum;
+        }
+    }
+
+    @Override
+    public int select(SplittableRandom random) {
+        double total = cumulative[size - 1];
+        if (total <= 0) {
+            return random.nextInt(size);
+        }
+        double target = random.nextDouble() * total;
+        //find the first player whose running sum is above the target
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulative[middle] > target) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+}
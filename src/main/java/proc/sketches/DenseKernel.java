@@ -0,0 +1,45 @@
+package proc.sketches;
+
+/**
+ * The inner work of a neural network layer: a dense multiply-accumulate of a weight layer
+ * with the nodes of the previous layer, followed by the sigmoid activation.
+ * The kernel that is used is picked once at startup by select().
+ */
+interface DenseKernel {
+
+    /**
+     * Multiplies a weight layer with a column of node values: out = W * in.
+     * The weights are read row by row starting at weightOffset (bias column first)
+     * @param w flat weights array
+     * @param weightOffset index of the first weight of the layer
+     * @param in array holding the node values (bias node included) of the previous layer
+     * @param inOffset index of the bias node in in
+     * @param columns number of columns of the layer (nodes of the previous layer + 1)
+     * @param out array receiving the calculated nodes
+     * @param outOffset index in out for the first calculated node
+     * @param rows number of rows of the layer (nodes of the next layer)
+     */
+    void dense(double[] w, int weightOffset, double[] in, int inOffset, int columns,
+               double[] out, int outOffset, int rows);
+
+    /**
+     * Applies sigmoid(x) = 1/(1+e^(-x)) to count nodes starting at from
+     */
+    void sigmoid(double[] nodes, int from, int count);
+
+    /**
+     * Picks the kernel used by all networks. The SIMD kernel (proc.sketches.VectorKernel) is used when
+     * its classes are on the classpath and the JVM was started with --add-modules jdk.incubator.vector,
+     * otherwise the scalar kernel is used. Starting with -Dproc.kernel=scalar forces the scalar kernel.
+     */
+    static DenseKernel select() {
+        if (!"scalar".equals(System.getProperty("proc.kernel"))) {
+            try {
+                return (DenseKernel) Class.forName("proc.sketches.VectorKernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+                //the vector module or the kernel itself is not available, use the scalar loops
+            }
+        }
+        return new ScalarKernel();
+    }
+}
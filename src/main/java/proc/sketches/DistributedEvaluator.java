@@ -0,0 +1,256 @@
+package proc.sketches;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Coordinator that plays the matches of a generation on EvaluationWorker processes. The matches are
+ * divided into batches that wait in a queue; every connected worker has a thread here that takes a
+ * batch, sends the weights and match seeds of its players (see WorkerProtocol) and waits for the
+ * scores. When a worker dies in the middle of a batch, or does not answer within the timeout, its
+ * connection is closed and the batch goes back into the queue for the other workers. While no worker is connected the coordinator plays the batches itself, so a
+ * generation always finishes.
+ *
+ * The coordinator only listens on the loopback address, the workers run on the same host.
+ */
+class DistributedEvaluator implements PopulationEvaluator, Closeable {
+    static final int DEFAULT_PORT = 7350;
+
+    /**
+     * The matches with indices [from, to) of a generation
+     */
+    private static class Batch {
+        int id;
+        int from;
+        int to;
+    }
+
+    private ServerSocket server;
+    private int batchSize;          //number of matches per batch
+    private int timeout;            //milliseconds a worker may take to answer, 0 to wait forever
+    private LinkedBlockingQueue<Batch> pending;     //batches waiting for a worker
+
+    private final Object lock = new Object();      //guards remaining, workers and sockets
+    private int remaining;          //number of batches of the current generation that are not finished
+    private int workers;            //number of connected workers
+    private ArrayList<Socket> sockets;  //connections of the workers
+    private volatile boolean closed;
+
+    //the generation being played, set before its batches are queued
+    private volatile Player[] players;
+    private volatile long[] seeds;
+    private volatile int radius;
+    private volatile int tileSize;
+    private volatile int maxGameTime;
+    private volatile TopK best;
+
+    /**
+     * Starts listening for workers
+     * @param port port on the loopback address the workers connect to
+     * @param batchSize number of matches sent to a worker at once
+     * @param timeout milliseconds a worker may take to answer before its batch is given to another worker,
+     *                0 to wait forever
+     */
+    DistributedEvaluator(int port, int batchSize, int timeout) throws IOException {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("The timeout can not be negative");
+        }
+        this.batchSize = batchSize;
+        this.timeout = timeout;
+        pending = new LinkedBlockingQueue<Batch>();
+        sockets = new ArrayList<Socket>();
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptWorkers();
+            }
+        }, "coordinator");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void acceptWorkers() {
+        while (!closed) {
+            try {
+                final Socket socket = server.accept();
+                Thread link = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                }, "worker-" + socket.getPort());
+                link.setDaemon(true);
+                link.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    System.out.println("Error: could not accept a worker");
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Feeds batches to one worker until it disconnects, runs on its own thread
+     */
+    private void serve(Socket socket) {
+        boolean counted = false;
+        try {
+            socket.setTcpNoDelay(true);
+            //a worker that hangs without closing its connection times out like a worker that died
+            socket.setSoTimeout(timeout);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            WorkerProtocol.readHello(in);
+            synchronized (lock) {
+                workers++;
+                counted = true;
+                sockets.add(socket);
+            }
+            System.out.println("Worker connected: " + socket.getRemoteSocketAddress());
+            while (!closed) {
+                Batch batch = pending.take();
+                int[] scores;
+                boolean[] alive = new boolean[2 * (batch.to - batch.from)];
+                try {
+                    WorkerProtocol.writeBatch(out, batch.id, radius, tileSize, maxGameTime, players, seeds,
+                            batch.from, batch.to);
+                    scores = WorkerProtocol.readScores(in, batch.id, alive.length, alive);
+                } catch (IOException e) {
+                    //the worker died or timed out, give the batch to another worker
+                    pending.add(batch);
+                    throw e;
+                }
+                TopK batchBest = new TopK(best.capacity());
+                for (int i = 0; i < scores.length; i++) {
+                    int index = 2 * batch.from + i;
+                    players[index].setScore(scores[i]);
+                    if (!alive[i]) {
+                        players[index].kill();
+                    }
+                    batchBest.offer(index, scores[i]);
+                }
+                finish(batchBest);
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                System.out.println("Worker lost: " + socket.getRemoteSocketAddress() + " (" + e.getMessage() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (lock) {
+                if (counted) {
+                    workers--;
+                    sockets.remove(socket);
+                }
+                lock.notifyAll();
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void evaluate(Player[] players, long[] seeds, int radius, int tileSize, int maxGameTime, TopK best) {
+        best.clear();
+        if (players.length % 2 == 1) {
+            best.offer(players.length - 1, players[players.length - 1].getScore());
+        }
+        int matches = players.length / 2;
+        this.players = players;
+        this.seeds = seeds;
+        this.radius = radius;
+        this.tileSize = tileSize;
+        this.maxGameTime = maxGameTime;
+        this.best = best;
+
+        int batches = (matches + batchSize - 1) / batchSize;
+        synchronized (lock) {
+            remaining = batches;
+        }
+        for (int b = 0; b < batches; b++) {
+            Batch batch = new Batch();
+            batch.id = b;
+            batch.from = b * batchSize;
+            batch.to = Math.min(matches, (b + 1) * batchSize);
+            pending.add(batch);
+        }
+
+        try {
+            while (true) {
+                Batch local = null;
+                synchronized (lock) {
+                    if (remaining == 0) {
+                        return;
+                    }
+                    if (workers == 0) {
+                        local = pending.poll();
+                    }
+                    if (local == null) {
+                        lock.wait(100);
+                    }
+                }
+                if (local != null) {
+                    //no worker to play it, play it here
+                    TopK batchBest = new TopK(best.capacity());
+                    MatchEvaluator.play(players, seeds, local.from, local.to, radius, tileSize, maxGameTime, batchBest);
+                    finish(batchBest);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the workers", e);
+        }
+    }
+
+    private void finish(TopK batchBest) {
+        synchronized (best) {
+            best.addAll(batchBest);
+        }
+        synchronized (lock) {
+            remaining--;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * returns the port the workers connect to
+     */
+    int getPort() {
+        return server.getLocalPort();
+    }
+
+    int getWorkers() {
+        synchronized (lock) {
+            return workers;
+        }
+    }
+
+    /**
+     * Stops listening, the connected workers are told to stop by closing their connections
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        synchronized (lock) {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+}
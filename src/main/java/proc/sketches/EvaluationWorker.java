@@ -0,0 +1,103 @@
+package proc.sketches;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Worker process of a DistributedEvaluator: connects to the coordinator, plays the batches of matches
+ * it receives and sends back the scores (see WorkerProtocol). The players and their networks are
+ * reused from batch to batch. Any number of workers can connect to a coordinator, also later on.
+ *
+ * Usage: EvaluationWorker [port] [host] [threads]
+ * Defaults: port 7350, localhost, one thread per core
+ */
+public class EvaluationWorker {
+    private ArrayList<Player> pool;     //players reused for every batch
+    private int[] layerSizes;           //topology of the players in the pool
+    private MatchEvaluator evaluator;
+
+    EvaluationWorker(int threads) {
+        pool = new ArrayList<Player>();
+        evaluator = new MatchEvaluator(threads > 1 ? new ForkJoinPool(threads) : null);
+    }
+
+    public static void main(String... args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DistributedEvaluator.DEFAULT_PORT;
+        String host = args.length > 1 ? args[1] : "localhost";
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        try (Socket socket = new Socket(host, port)) {
+            System.out.println("Connected to " + socket.getRemoteSocketAddress());
+            new EvaluationWorker(threads).serve(socket);
+        }
+        System.out.println("Coordinator closed the connection");
+        System.exit(0);
+    }
+
+    /**
+     * Plays batches until the coordinator says bye or closes the connection
+     */
+    void serve(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        WorkerProtocol.writeHello(out);
+        while (true) {
+            int type = in.read();
+            if (type == -1 || type == WorkerProtocol.BYE) {
+                return;
+            }
+            if (type != WorkerProtocol.BATCH) {
+                throw new IOException("Unknown message type " + type);
+            }
+            playBatch(in, out);
+        }
+    }
+
+    private void playBatch(DataInputStream in, DataOutputStream out) throws IOException {
+        int id = in.readInt();
+        int radius = in.readInt();
+        int tileSize = in.readInt();
+        int maxGameTime = in.readInt();
+        Activation activation;
+        try {
+            activation = Activation.valueOf(in.readUTF());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown activation mode", e);
+        }
+        int[] sizes = new int[in.readInt()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = in.readInt();
+        }
+        int matches = in.readInt();
+        if (!Arrays.equals(sizes, layerSizes)) {
+            pool.clear();
+            layerSizes = sizes;
+        }
+        while (pool.size() < 2 * matches) {
+            int[] hidden = Arrays.copyOfRange(sizes, 1, sizes.length - 1);
+            pool.add(new Player(new NeuralNetwork(sizes[0], hidden, sizes[sizes.length - 1])));
+        }
+
+        Player[] players = new Player[2 * matches];
+        long[] seeds = new long[matches];
+        for (int match = 0; match < matches; match++) {
+            seeds[match] = in.readLong();
+            for (int p = 2 * match; p < 2 * match + 2; p++) {
+                players[p] = pool.get(p);
+                players[p].reset();
+                //the networks evaluate like the ones of the coordinator, whatever -Dproc.activation this JVM has
+                players[p].readBrain().setActivation(activation);
+                WorkerProtocol.readWeights(in, players[p].readBrain().replaceableWeights());
+            }
+        }
+        evaluator.evaluate(players, seeds, radius, tileSize, maxGameTime, new TopK(1));
+        WorkerProtocol.writeScores(out, id, players, players.length);
+    }
+}
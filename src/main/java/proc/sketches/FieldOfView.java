@@ -0,0 +1,53 @@
+package proc.sketches;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gather tables of the field of view. What a player sees only depends on the NavPoint it is on and
+ * the direction it is heading, and the cube never changes its shape, so the (2 * fov + 1)^2 NavPoints
+ * seen from every NavPoint in every direction are found once per radius and fov by walking the
+ * neighbours like PlayField.getSurroundings. Reading the surroundings of a player is then a run of
+ * indexed reads, without walking the cube and without allocating.
+ *
+ * The tables are shared by all fields and threads, they are never changed after they are built.
+ */
+final class FieldOfView {
+    //the tables built so far, by radius and fov
+    private static final ConcurrentHashMap<Long, int[]> TABLES = new ConcurrentHashMap<Long, int[]>();
+
+    private FieldOfView() {
+    }
+
+    /**
+     * returns the gather table for a cube of the given radius and the given fov. The indices of the NavPoints seen
+     * from NavPoint i heading in direction d are at [(4 * i + d) * area, (4 * i + d + 1) * area) with
+     * area = (2 * fov + 1)^2, in the order of PlayField.getSurroundings
+     */
+    static int[] table(int radius, int fov) {
+        Long key = ((long) radius << 32) | fov;
+        int[] table = TABLES.get(key);
+        if (table == null) {
+            //two threads may both build it, they build the same table
+            table = build(radius, fov);
+            TABLES.putIfAbsent(key, table);
+        }
+        return table;
+    }
+
+    private static int[] build(int radius, int fov) {
+        CubeTopology cube = CubeTopology.of(radius, 1);
+        NavPoint[] navPoints = cube.navPoints;
+        int area = (2 * fov + 1) * (2 * fov + 1);
+        int[] table = new int[navPoints.length * 4 * area];
+        for (NavPoint navPoint : navPoints) {
+            for (int direction = 0; direction < 4; direction++) {
+                NavPoint[] seen = PlayField.getSurroundings(cube.neighbours, navPoint, direction, fov);
+                int offset = (4 * navPoint.index + direction) * area;
+                for (int k = 0; k < area; k++) {
+                    table[offset + k] = seen[k].index;
+                }
+            }
+        }
+        return table;
+    }
+}
@@ -0,0 +1,159 @@
+package proc.sketches;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the results of played matches. A match is deterministic for the same two genomes and the
+ * same seed, so when both genomes and the seed come back (elites, clones that were not mutated) the
+ * scores are taken from the cache instead of playing the match again. Genomes are identified by the
+ * 128 bit hash of their weights (NeuralNetwork.hashLow and hashHigh). The least recently used result
+ * is dropped when the cache is full.
+ */
+class FitnessCache {
+
+    /**
+     * The players and the seed of a match
+     */
+    private static class Key {
+        long player1Low;
+        long player1High;
+        long player2Low;
+        long player2High;
+        long seed;
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return player1Low == key.player1Low && player1High == key.player1High
+                    && player2Low == key.player2Low && player2High == key.player2High && seed == key.seed;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (player1Low ^ player2Low * 31 ^ seed * 961);
+        }
+    }
+
+    //final scores of both players of every cached match and whether they survived it,
+    //as {score 1, score 2, alive bits} with bit 0 for player 1 and bit 1 for player 2
+    private LinkedHashMap<Key, int[]> results;
+    private long hits;              //matches taken from the cache
+    private long misses;            //matches that had to be played
+
+    /**
+     * @param capacity maximal number of remembered matches
+     */
+    FitnessCache(final int capacity) {
+        //access order, so the eldest entry is the least recently used one
+        results = new LinkedHashMap<Key, int[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Plays the matches of the population like PopulationEvaluator.evaluate, but only the matches of
+     * which the result is not in the cache are given to the evaluator
+     * @param evaluator plays the matches that are not cached
+     */
+    void evaluate(PopulationEvaluator evaluator, Player[] players, long[] seeds, int radius, int tileSize,
+                  int maxGameTime, TopK best) {
+        best.clear();
+        if (players.length % 2 == 1) {
+            best.offer(players.length - 1, players[players.length - 1].getScore());
+        }
+        int matches = players.length / 2;
+        Key[] keys = new Key[matches];
+        int[] missing = new int[matches];
+        int missingCount = 0;
+        for (int i = 0; i < matches; i++) {
+            keys[i] = key(players[2 * i], players[2 * i + 1], seeds[i], radius, tileSize, maxGameTime);
+            int[] result = results.get(keys[i]);
+            if (result != null) {
+                hits++;
+                restore(players[2 * i], result[0], (result[2] & 1) != 0);
+                restore(players[2 * i + 1], result[1], (result[2] & 2) != 0);
+                best.offer(2 * i, result[0]);
+                best.offer(2 * i + 1, result[1]);
+            } else {
+                misses++;
+                missing[missingCount++] = i;
+            }
+        }
+        if (missingCount == 0) {
+            return;
+        }
+
+        //play the other matches as one smaller population
+        Player[] remaining = new Player[2 * missingCount];
+        long[] remainingSeeds = new long[missingCount];
+        for (int j = 0; j < missingCount; j++) {
+            remaining[2 * j] = players[2 * missing[j]];
+            remaining[2 * j + 1] = players[2 * missing[j] + 1];
+            remainingSeeds[j] = seeds[missing[j]];
+        }
+        evaluator.evaluate(remaining, remainingSeeds, radius, tileSize, maxGameTime, new TopK(1));
+        for (int j = 0; j < missingCount; j++) {
+            int match = missing[j];
+            int score1 = players[2 * match].getScore();
+            int score2 = players[2 * match + 1].getScore();
+            int alive = (players[2 * match].isAlive() ? 1 : 0) | (players[2 * match + 1].isAlive() ? 2 : 0);
+            results.put(keys[match], new int[]{score1, score2, alive});
+            best.offer(2 * match, score1);
+            best.offer(2 * match + 1, score2);
+        }
+    }
+
+    /**
+     * Puts a player in the state its cached match left it in
+     */
+    private static void restore(Player player, int score, boolean alive) {
+        player.setScore(score);
+        if (!alive) {
+            player.kill();
+        }
+    }
+
+    /**
+     * returns an evaluator that plays the matches through this cache with the given evaluator
+     */
+    PopulationEvaluator around(final PopulationEvaluator evaluator) {
+        return new PopulationEvaluator() {
+            @Override
+            public void evaluate(Player[] players, long[] seeds, int radius, int tileSize, int maxGameTime, TopK best) {
+                FitnessCache.this.evaluate(evaluator, players, seeds, radius, tileSize, maxGameTime, best);
+            }
+        };
+    }
+
+    private static Key key(Player player1, Player player2, long seed, int radius, int tileSize, int maxGameTime) {
+        Key key = new Key();
+        NeuralNetwork brain1 = player1.readBrain();
+        NeuralNetwork brain2 = player2.readBrain();
+        key.player1Low = brain1.hashLow();
+        key.player1High = brain1.hashHigh();
+        key.player2Low = brain2.hashLow();
+        key.player2High = brain2.hashHigh();
+        //the settings of the match are part of the seed, a result only counts for the same settings
+        key.seed = Seeds.mix(Seeds.mix(seed, radius), (long) tileSize << 32 | maxGameTime);
+        return key;
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+
+    int size() {
+        return results.size();
+    }
+}
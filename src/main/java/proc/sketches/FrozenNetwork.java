@@ -0,0 +1,150 @@
+package proc.sketches;
+
+/**
+ * Read-only, quantized copy of a NeuralNetwork for brains that will not change anymore, like the
+ * champions that are deployed as opponents. The weights are stored as floats, or as bytes with one
+ * scale per row of a weight layer, so the network takes a half or an eighth of the memory (and
+ * memory bandwidth) of the original. feedForward works like NeuralNetwork.feedForward.
+ */
+public class FrozenNetwork {
+
+    public enum Precision {
+        FLOAT32,    //weights rounded to the nearest float
+        INT8        //weights of a row stored as round(w / scale) in [-127, 127], scale = max|w| / 127
+    }
+
+    private Precision precision;
+    private Activation activationMode;
+
+    private int input_nodes;
+    private int output_nodes;
+    private int[] layerSizes;       //number of nodes in every layer from input to output
+    private int[] layerOffsets;     //index of the first weight of each weight layer
+    private int[] rowOffsets;       //index of the first row of each weight layer in scales
+
+    private float[] floatWeights;   //weights in FLOAT32 precision
+    private byte[] byteWeights;     //weights in INT8 precision
+    private float[] scales;         //scale of every row in INT8 precision
+
+    //Scratch buffers holding the activations of the layer being read and the layer being written,
+    //index 0 always holds the bias node
+    private double[] current;
+    private double[] next;
+
+    /**
+     * Freezes the current weights of a network, later changes to the network are not seen.
+     * Use NeuralNetwork.freeze
+     * @param layerSizes number of nodes per layer of the network
+     * @param layerOffsets index of the first weight of each weight layer
+     * @param weights flat weights of the network
+     * @param activation sigmoid implementation of the network
+     * @param precision how the weights are stored
+     */
+    FrozenNetwork(int[] layerSizes, int[] layerOffsets, double[] weights, Activation activation, Precision precision) {
+        this.precision = precision;
+        this.activationMode = activation;
+        this.layerSizes = layerSizes.clone();
+        this.layerOffsets = layerOffsets.clone();
+        input_nodes = layerSizes[0];
+        output_nodes = layerSizes[layerSizes.length - 1];
+
+        int widest = 0;
+        rowOffsets = new int[layerSizes.length - 1];
+        int rowCount = 0;
+        for (int k = 0; k < layerSizes.length - 1; k++) {
+            rowOffsets[k] = rowCount;
+            rowCount += layerSizes[k + 1];
+            widest = Math.max(widest, layerSizes[k] + 1);
+        }
+        widest = Math.max(widest, output_nodes + 1);
+        current = new double[widest];
+        next = new double[widest];
+
+        if (precision == Precision.FLOAT32) {
+            floatWeights = new float[weights.length];
+            for (int i = 0; i < weights.length; i++) {
+                floatWeights[i] = (float) weights[i];
+            }
+        } else {
+            byteWeights = new byte[weights.length];
+            scales = new float[rowCount];
+            for (int k = 0; k < layerSizes.length - 1; k++) {
+                int columns = layerSizes[k] + 1;
+                for (int i = 0; i < layerSizes[k + 1]; i++) {
+                    int start = layerOffsets[k] + i * columns;
+                    double max = 0;
+                    for (int j = start; j < start + columns; j++) {
+                        max = Math.max(max, Math.abs(weights[j]));
+                    }
+                    float scale = max == 0 ? 1 : (float) (max / 127);
+                    scales[rowOffsets[k] + i] = scale;
+                    for (int j = start; j < start + columns; j++) {
+                        long quantized = Math.round(weights[j] / scale);
+                        byteWeights[j] = (byte) Math.max(-127, Math.min(127, quantized));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Feedforward algorithm which writes the output of the network into the given array,
+     * with the same contract as NeuralNetwork.feedForward
+     * @param input_data an array of double values representing the current state of the environment
+     * @param output array of at least output_nodes elements receiving the output of the network
+     */
+    public void feedForward(double[] input_data, double[] output) {
+        double[] in = current;
+        double[] out = next;
+        in[0] = 1;
+        System.arraycopy(input_data, 0, in, 1, input_nodes);
+        for (int k = 0; k < layerSizes.length - 1; k++) {
+            int columns = layerSizes[k] + 1;
+            int rows = layerSizes[k + 1];
+            int w = layerOffsets[k];
+            out[0] = 1;
+            for (int i = 1; i <= rows; i++) {
+                float sum = 0;
+                if (precision == Precision.FLOAT32) {
+                    for (int j = 0; j < columns; j++) {
+                        sum += floatWeights[w++] * (float) in[j];
+                    }
+                } else {
+                    for (int j = 0; j < columns; j++) {
+                        sum += byteWeights[w++] * (float) in[j];
+                    }
+                    sum *= scales[rowOffsets[k] + i - 1];
+                }
+                out[i] = sum;
+            }
+            activationMode.apply(out, 1, rows);
+            double[] swap = in;
+            in = out;
+            out = swap;
+        }
+        System.arraycopy(in, 1, output, 0, output_nodes);
+    }
+
+    /**
+     * Feedforward algorithm which returns the output of the network represented in double values
+     */
+    public double[] feedForward(double[] input_data) {
+        double[] output = new double[output_nodes];
+        feedForward(input_data, output);
+        return output;
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * returns the number of bytes used by the weights (and scales) of this network
+     */
+    public long weightBytes() {
+        if (precision == Precision.FLOAT32) {
+            return 4L * floatWeights.length;
+        }
+        return byteWeights.length + 4L * scales.length;
+    }
+}
@@ -1,40 +1,115 @@
 package proc.sketches;
 
-import processing.core.PApplet;
-
-import java.util.Random;                //for generation random numbers
+import java.util.Arrays;
+import java.util.SplittableRandom;      //for generation random numbers
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 public class Genetics {
-    PApplet sketch;
-
     private int generation;         //current generation number
     private int popSize;            //the size of the population
     private Player[] players;       //Array with the current players in the population
+    private Player[] offspring;     //Players of the previous generation, reused for the next generation
+    private int[] lastScores;       //scores of the last generation of the checkpoint this population was resumed from
 
     private int radius;             //the radius of the cube being played in
     private int tileSize;           //the size of the tiles generated in the cube
+    private int fov;                //distance the players can see
 
     private int maxGameTime;        //maximal amount of steps the AI can make before terminating
+    private PopulationEvaluator evaluator;  //plays the matches of a generation, in parallel or on other machines
+    private long seed;              //seed of the run, every random choice of a generation derives from it
+    private boolean fixedMatchSeeds;    //whether every generation plays its matches with the same seeds
+    private FitnessCache cache;     //results of matches that were played before, may be null
+    private SuccessiveHalving racing;   //spends the game time on the promising players, may be null
+    private SelectionStrategy selection;    //picks the parents of the next generation
+    private double mutationChance;  //chance that a weight of a child is mutated
+    private int elites;             //number of best players copied unchanged into the next generation
+    private boolean[] eliteSlots;   //whether a slot of players holds an elite of the previous generation
+    private int migrants;           //number of best players handed out by emigrants
+    private TopK best;              //the players with the highest scores, filled while the matches finish
+    private int[] ranking;          //indices of the best players of the last played generation, best first
     public float score;             //the average score of the population
     private int highScore;          //the highest score in the population
 
 
-    Genetics(PApplet sketch, int popSize, int radius, int tileSize) {
-        this.sketch = sketch;
-        this.popSize = popSize;
+    Genetics(int popSize, int radius, int tileSize) {
+        this(popSize, radius, tileSize, 2);
+    }
+
+    /**
+     * Creates a population of random players. Nothing is drawn, so a population can be trained
+     * without a sketch (see HeadlessTrainer)
+     * @param popSize the size of the population
+     * @param radius the radius of the cube being played in
+     * @param tileSize the size of the tiles generated in the cube
+     * @param fov distance the players can see
+     */
+    Genetics(int popSize, int radius, int tileSize, int fov) {
+        this(popSize, radius, tileSize, fov, RandomStreams.current().nextLong());
+    }
+
+    /**
+     * Creates a population of random players that evolves the same way every time it is created
+     * with the same seed, on any number of threads (see Seeds)
+     * @param seed seed of the run, the first brains, the matches and the genetic operators derive from it
+     */
+    Genetics(int popSize, int radius, int tileSize, int fov, long seed) {
+        this(radius, tileSize, fov, randomPlayers(popSize, fov, seed), seed);
+    }
+
+    /**
+     * Continues a population from a checkpoint, see Checkpoint.resume
+     * @param brains brains of the population that is about to play its generation
+     * @param generation number of that generation
+     * @param seed seed of the run of the population
+     * @param lastScores scores of the generation played before the checkpoint, see getLastScores
+     */
+    Genetics(int radius, int tileSize, NeuralNetwork[] brains, int generation, long seed, int highScore, float score,
+             int[] lastScores) {
+        this(radius, tileSize, new Player(brains[0]).getFOV(), playersWith(brains), seed);
+        this.generation = generation;
+        this.highScore = highScore;
+        this.score = score;
+        this.lastScores = lastScores.clone();
+    }
+
+    private Genetics(int radius, int tileSize, int fov, Player[] players, long seed) {
+        this.popSize = players.length;
         generation = 0;
 
         this.radius = radius;
         this.tileSize = tileSize;
+        this.fov = fov;
 
         maxGameTime = 1000;
         score = 0;
+        evaluator = new MatchEvaluator(ForkJoinPool.commonPool());
+        this.seed = seed;
+        selection = new AliasSelection();
+        mutationChance = 0.1;
+        elites = 0;
+        migrants = 0;
+        best = new TopK(2);
 
-        players = new Player[popSize];
+        this.players = players;
+    }
 
+    private static Player[] randomPlayers(int popSize, int fov, long seed) {
+        SplittableRandom random = new SplittableRandom(Seeds.derive(seed, Seeds.BRAINS, 0));
+        Player[] players = new Player[popSize];
         for (int i = 0 ; i < popSize; i++) {
-            players[i] = new Player(this.sketch);
+            players[i] = new Player(fov, Player.randomBrain(fov, random));
+        }
+        return players;
+    }
+
+    private static Player[] playersWith(NeuralNetwork[] brains) {
+        Player[] players = new Player[brains.length];
+        for (int i = 0; i < brains.length; i++) {
+            players[i] = new Player(brains[i]);
         }
+        return players;
     }
 
     /**
@@ -44,53 +119,25 @@ public class Genetics {
      *
      */
     public NeuralNetwork[] evolve() {
-        for (int i = 0; i < popSize/2; i+=2) {
-            //reset the playing field
-            Player player1 = players[i];
-            Player player2 = players[i+1];
-            PlayField playField = new PlayField(sketch, radius, tileSize, player1, player2);
-            playField.generate();
-            //Play for maxGameTime turns
-            int time = 0;
-            while (time < maxGameTime) {
-                playField.updateAI();
-                //How score is added can be changed to train the AI on different tactics
-                //These settings are the settings for the creating of the hard AI difficulty
-                if (player1.hasPU()) {
-                    player1.addScore(1);
-                    player2.addPowerUp(false);
-                }
-                if (player1.isAlive()) {
-                    //player1.addScore(1);
-                    if (!player2.isAlive()) {
-                        //player1.addScore(10);
-                    }
-                }
-                if (player2.hasPU()) {
-                    player2.addScore(1);
-                    player2.addPowerUp(false);
-                }
-                if (player2.isAlive()) {
-                    //player2.addScore(1);
-                    if (!player1.isAlive()) {
-                        //player2.addScore(10);
-                    }
-                }
-                //if both have died stop playing
-                if (!(player1.isAlive() || player2.isAlive())) {
-                    break;
-                }
-                time += 1;
-            }
+        //play every match of the population, the matches are spread over the threads of the evaluator
+        long generationSeed = Seeds.derive(seed, Seeds.MATCHES, fixedMatchSeeds ? 0 : generation);
+        long[] seeds = Seeds.matchSeeds(generationSeed, popSize / 2);
+        PopulationEvaluator play = cache != null ? cache.around(evaluator) : evaluator;
+        if (racing != null) {
+            racing.evaluate(play, players, seeds, radius, tileSize, maxGameTime, best);
+        } else {
+            play.evaluate(players, seeds, radius, tileSize, maxGameTime, best);
         }
         //if all AI's have played their games, evaluate the fitness
         setFitness();
-        generateHighScore();
+        ranking = best.best();
+        highScore = players[ranking[0]].getScore();
         //generate a new population of players based on the just calculated fitness
         //the selection procedure for generating a new population works by executing algorithms
         //for selection, mutation and crossover
-        NeuralNetwork[] bestBrains = getBestBrains();
-        generateNewPopulation();
+        NeuralNetwork[] bestBrains = new NeuralNetwork[]{players[ranking[0]].getBrain(),
+                players[ranking[Math.min(1, ranking.length - 1)]].getBrain()};
+        generateNewPopulation(ranking);
         generation += 1;
         return bestBrains;
     }
@@ -112,83 +159,230 @@ public class Genetics {
         System.out.println(sumScores);
     }
     /**
-     * Determines which player has gained the highest score in the generation
-     * and returns this highest scoring player
-     *
+     * generates a new population based on the fitness of the current population
+     * by selection and mutation. The players and weights of the previous generation are
+     * reused for the children, so no memory is allocated per child.
+     * The elites are the best players, copied without crossover or mutation into the slot they played
+     * in, so two elites that met keep meeting in the same match and the fitness cache can skip it.
+     * Selection, crossover and mutation draw from their own streams of the generation, see Seeds
+     * @param ranking indices of the best players, best first
      */
-    private void generateHighScore() {
-        int highScore = 0;
-        int hsIndex = 0;
+    void generateNewPopulation(int[] ranking) {
+        if (offspring == null) {
+            offspring = new Player[popSize];
+            for (int i = 0; i < popSize; i++) {
+                offspring[i] = new Player(fov, players[i].getBrain());
+            }
+        }
+        SplittableRandom operators = new SplittableRandom(Seeds.derive(seed, Seeds.OPERATORS, generation));
+        SplittableRandom selecting = operators.split();
+        SplittableRandom crossing = operators.split();
+        SplittableRandom mutating = operators.split();
+        selection.prepare(players);
+        if (eliteSlots == null) {
+            eliteSlots = new boolean[popSize];
+        }
+        Arrays.fill(eliteSlots, false);
+        for (int i = 0; i < elites; i++) {
+            int slot = ranking[i];
+            Player child = offspring[slot];
+            child.reset();
+            child.setBrain(players[slot].getBrain());
+            eliteSlots[slot] = true;
+        }
         for (int i = 0; i < popSize; i++) {
-            int score = players[i].getScore();
-            if (score > highScore) {
-                highScore = score;
-                hsIndex = i;
+            if (eliteSlots[i]) {
+                continue;
             }
+            Player parent1 = players[selection.select(selecting)];
+            Player parent2 = players[selection.select(selecting)];
+            Player child = offspring[i];
+            child.reset();
+            crossOver(parent1, parent2, child, crossing);
+            child.readBrain().mutate(mutationChance, mutating);
         }
-        this.highScore = players[hsIndex].getScore();
+
+        Player[] previous = this.players;
+        this.players = offspring;
+        offspring = previous;
     }
 
-    private NeuralNetwork[] getBestBrains() {
-        int highScore = 0;
-        int hsIndex = 0;
-        int hsIndexPrev = 0;
-        for (int i = 0; i < popSize; i++) {
-            int score = players[i].getScore();
-            if (score > highScore) {
-                hsIndexPrev = hsIndex;
-                highScore = score;
-                hsIndex = i;
-            }
+    /**
+     * Crossover algorithm, writes the crossover of both parents into the brain of the child
+     */
+    private void crossOver(Player parent1, Player parent2, Player child, SplittableRandom r) {
+        child.readBrain().inherit(parent1.readBrain(), parent2.readBrain(), r);
+    }
+
+    /**
+     * Sets the executor the matches of every generation are played on, for example a ForkJoinPool
+     * with as many threads as the machine has cores. By default the common ForkJoinPool is used,
+     * null plays all matches on the thread calling evolve
+     */
+    public void setExecutor(ExecutorService executor) {
+        evaluator = new MatchEvaluator(executor);
+    }
+
+    /**
+     * Sets what plays the matches of every generation, for example a DistributedEvaluator
+     * that sends the matches to worker processes
+     */
+    void setEvaluator(PopulationEvaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Sets the algorithm picking the parents of the next generation,
+     * by default fitness proportionate selection with an alias table
+     */
+    void setSelection(SelectionStrategy selection) {
+        this.selection = selection;
+    }
+
+    /**
+     * Sets the number of best players that go to the next generation unchanged, 0 by default
+     */
+    void setElitism(int elites) {
+        if (elites < 0 || elites > popSize) {
+            throw new IllegalArgumentException("The number of elites must be between 0 and the population size");
         }
-        NeuralNetwork[] bestBrains = new NeuralNetwork[]{players[hsIndex].getBrain().copy(), players[hsIndexPrev].getBrain().copy()};
-        return bestBrains;
+        this.elites = elites;
+        best = new TopK(Math.max(2, Math.max(elites, migrants)));
     }
 
     /**
-     * generates a new population based on the fitness of the current population
-     * by selection and mutation
-     *
+     * Sets the number of best players handed out by emigrants
      */
-    void generateNewPopulation() {
-        Player[] newPop = new Player[popSize];
-        for (int i = 0; i < popSize; i++) {
-            Player parent1 = pickParent();
-            Player parent2 = pickParent();
-            newPop[i] = crossOver(parent1, parent2);
-            //newPop[i] = pickParent();
-            newPop[i].mutate(0.1);
+    void setMigrants(int migrants) {
+        if (migrants < 0 || migrants > popSize) {
+            throw new IllegalArgumentException("The number of migrants must be between 0 and the population size");
         }
+        this.migrants = migrants;
+        best = new TopK(Math.max(2, Math.max(elites, migrants)));
+    }
 
-        this.players = newPop;
+    /**
+     * returns copies of the brains of the best players of the generation played by the last call
+     * to evolve, at most as many as set with setMigrants. The copies share their weights with the
+     * originals until one of them changes, so they can be handed to another thread
+     */
+    NeuralNetwork[] emigrants() {
+        if (ranking == null) {
+            return new NeuralNetwork[0];
+        }
+        //after evolve the played generation is kept in offspring until the next generation is made
+        int count = Math.min(migrants, ranking.length);
+        NeuralNetwork[] brains = new NeuralNetwork[count];
+        for (int i = 0; i < count; i++) {
+            brains[i] = offspring[ranking[i]].getBrain();
+        }
+        return brains;
     }
 
     /**
-     * Algorithm for selecting parents
+     * Puts brains from another population into the next generation, they replace the last children
+     * that are not elites
+     * @param brains brains with the same topology as the brains of this population
      */
-    private Player pickParent() {
-        int index = 0;
-        Random r = new Random();
-        double randomN = r.nextDouble();
-        while (randomN >= 0) {
-            index++;
-            if (index >= popSize) {
-                index = popSize - 1;
+    void immigrate(NeuralNetwork[] brains) {
+        int slot = popSize - 1;
+        for (int i = 0; i < brains.length; i++) {
+            if (brains[i].input_nodes != players[0].readBrain().input_nodes) {
+                throw new IllegalArgumentException("The immigrant does not have the field of view of this population");
+            }
+            while (slot >= 0 && eliteSlots != null && eliteSlots[slot]) {
+                slot--;
+            }
+            if (slot < 0) {
+                return;
             }
-            randomN -= this.players[index].getFitness();
+            players[slot--].setBrain(brains[i]);
         }
-        NeuralNetwork parentBrain = this.players[index].getBrain();
-        Player parent = new Player(sketch);
-        parent.setBrain(parentBrain);
-        return parent;
     }
 
     /**
-     * Crossover algorithm
+     * Remembers the results of the last capacity matches, so a match between the same two genomes with
+     * the same seed is not played again: mostly the matches between two elites, see setElitism.
+     * Turning the cache on also turns on setFixedMatchSeeds, otherwise the seeds of the matches change
+     * every generation and no match comes back. A capacity of 0 turns the cache off
      */
-    private Player crossOver(Player parent1, Player parent2) {
-        Player child = parent1.haveSex(parent2);
-        return child;
+    void setFitnessCache(int capacity) {
+        cache = capacity > 0 ? new FitnessCache(capacity) : null;
+        if (cache != null) {
+            fixedMatchSeeds = true;
+        }
+    }
+
+    FitnessCache getFitnessCache() {
+        return cache;
+    }
+
+    /**
+     * Lets the players race for their game time: short matches first, only the best part of the
+     * players plays the longer matches. null gives every match the full game time
+     */
+    void setRacing(SuccessiveHalving racing) {
+        this.racing = racing;
+    }
+
+    /**
+     * Sets the chance that a weight of a child is mutated, 0.1 by default
+     */
+    void setMutationChance(double mutationChance) {
+        this.mutationChance = mutationChance;
+    }
+
+    /**
+     * Lets every generation play match i with the same seed, instead of new seeds every generation
+     */
+    void setFixedMatchSeeds(boolean fixedMatchSeeds) {
+        if (!fixedMatchSeeds && cache != null) {
+            System.out.println("Warning: the fitness cache will hardly be used, the matches get new seeds every generation");
+        }
+        this.fixedMatchSeeds = fixedMatchSeeds;
+    }
+
+    /**
+     * returns copies of the brains of the population that plays the next generation. The copies share
+     * their weights with the originals until one of them changes, so they stay the same while the
+     * population evolves on
+     */
+    NeuralNetwork[] getBrains() {
+        NeuralNetwork[] brains = new NeuralNetwork[popSize];
+        for (int i = 0; i < popSize; i++) {
+            brains[i] = players[i].getBrain();
+        }
+        return brains;
+    }
+
+    /**
+     * returns the scores of the generation played by the last call to evolve, all 0 before the first call
+     * unless the population was resumed from a checkpoint, which gives the scores stored in the checkpoint
+     */
+    int[] getLastScores() {
+        if (offspring == null && lastScores != null) {
+            return lastScores.clone();
+        }
+        int[] scores = new int[popSize];
+        if (offspring != null) {
+            //after evolve the played generation is kept in offspring until the next generation is made
+            for (int i = 0; i < popSize; i++) {
+                scores[i] = offspring[i].getScore();
+            }
+        }
+        return scores;
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    int getRadius() {
+        return radius;
+    }
+
+    int getTileSize() {
+        return tileSize;
     }
 
     public float getScore() {
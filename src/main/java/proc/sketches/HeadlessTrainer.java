@@ -0,0 +1,142 @@
+package proc.sketches;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Trains a population without a display: runs the generations back to back at full speed and never
+ * loads the Processing runtime, so it can run on servers without a screen. After every generation the
+ * best brain is saved, so an interrupted run keeps the best brain found so far.
+ *
+ * Usage: HeadlessTrainer [population size] [radius] [fov] [generations] [output file] [threads] [islands]
+ * Defaults: 1000 players, radius 5, fov 2, 100 generations, weights.bin, one thread per core, no islands
+ *
+ * With islands the population is divided over that many islands of an IslandModel, every island runs
+ * on its own thread (the threads argument is not used then) and the best brain of the whole run is
+ * saved at the end.
+ *
+ * Start the JVM with -Dproc.coordinator=<port> to play the matches on EvaluationWorker processes
+ * that connect to that port (not in island mode). A worker that does not answer a batch within
+ * -Dproc.worker.timeout milliseconds (60000 by default, 0 waits forever) is dropped and its batch is played
+ * by the others. Workers must use the same kernel as the coordinator, they take the activation mode from it.
+ *
+ * With -Dproc.checkpoint=<prefix> a checkpoint of the whole population is written to
+ * prefix-<generation>.ckpt every -Dproc.checkpoint.interval generations (10 by default), only storing the
+ * changed weights with -Dproc.checkpoint.delta=true. -Dproc.resume=<checkpoint file> continues a run
+ * from a checkpoint instead of starting with a random population; the population size, radius and fov
+ * then come from the checkpoint and the run stops when the population reaches the given generation.
+ *
+ * -Dproc.elites=<count> copies that many of the best players unchanged into the next generation, each in
+ * the slot it played in. -Dproc.fixedSeeds=true plays match i of every generation with the same seed and
+ * -Dproc.cache=<capacity> remembers the results of that many matches, so matches between unchanged genomes
+ * (two elites that meet again) are not played again. The cache turns on fixed seeds unless
+ * -Dproc.fixedSeeds=false is given.
+ * -Dproc.seed=<seed> starts the run from the given seed, a run with the same seed and arguments gives the
+ * same brains on any number of threads or workers (in island mode until migrants arrive). Without it a
+ * random seed is used, which is printed so the run can be repeated.
+ *
+ * -Dproc.racing=true plays every generation in rounds of growing game time, only the better half of the
+ * players goes on to the next round (see SuccessiveHalving).
+ *
+ * -Dproc.selection=<strategy> picks the parents with alias (the default), cumulative, rank,
+ * tournament:<size> or truncation:<fraction> selection, see SelectionStrategy.forName (not in island mode).
+ */
+public class HeadlessTrainer {
+    static final int TILE_SIZE = 20;    //size of the tiles, only used for the locations of the NavPoints
+    static final int MIGRATION_INTERVAL = 5;    //generations between two migrations of the islands
+    static final int MIGRANTS = 2;              //number of brains an island sends every migration
+    static final int BATCH_SIZE = 16;           //matches sent to a worker at once
+    static final int WORKER_TIMEOUT = 60000;    //milliseconds a worker may take to answer a batch
+    static final int CHECKPOINT_FULL_INTERVAL = 10; //every 10th delta encoded checkpoint is complete
+
+    public static void main(String... args) throws IOException, InterruptedException {
+        int popSize = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int radius = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int fov = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int generations = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        String outputFile = args.length > 4 ? args[4] : "weights.bin";
+        int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+        int islands = args.length > 6 ? Integer.parseInt(args[6]) : 0;
+
+        long seed = Long.getLong("proc.seed", RandomStreams.current().nextLong());
+        if (islands > 0 || System.getProperty("proc.resume") == null) {
+            System.out.println("Seed " + seed);
+        }
+
+        if (islands > 0) {
+            IslandModel model = new IslandModel(islands, popSize / islands, radius, TILE_SIZE, fov,
+                    MIGRATION_INTERVAL, MIGRANTS, IslandModel.Topology.RING, seed);
+            long start = System.nanoTime();
+            model.evolve(generations);
+            long millis = (System.nanoTime() - start) / 1000000;
+            model.getChampion().saveWeights(outputFile);
+            System.out.println(islands + " islands, " + generations + " generations: high score "
+                    + model.getChampionScore() + " (" + millis + " ms)");
+            System.out.println("Best brain saved to " + outputFile);
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Genetics genetics;
+        String resume = System.getProperty("proc.resume");
+        if (resume != null) {
+            genetics = Checkpoint.resume(resume);
+            System.out.println("Resuming at generation " + genetics.getGeneration() + " from " + resume);
+        } else {
+            genetics = new Genetics(popSize, radius, TILE_SIZE, fov, seed);
+        }
+        genetics.setExecutor(pool);
+        genetics.setElitism(Integer.getInteger("proc.elites", 0));
+        //the cache turns on fixed seeds, unless they are turned off explicitly
+        genetics.setFitnessCache(Integer.getInteger("proc.cache", 0));
+        if (System.getProperty("proc.fixedSeeds") != null) {
+            genetics.setFixedMatchSeeds(Boolean.getBoolean("proc.fixedSeeds"));
+        }
+        String selection = System.getProperty("proc.selection");
+        if (selection != null) {
+            genetics.setSelection(SelectionStrategy.forName(selection));
+        }
+        if (Boolean.getBoolean("proc.racing")) {
+            genetics.setRacing(new SuccessiveHalving());
+        }
+        Checkpoint checkpoint = null;
+        String checkpointPrefix = System.getProperty("proc.checkpoint");
+        if (checkpointPrefix != null) {
+            checkpoint = new Checkpoint(checkpointPrefix, Integer.getInteger("proc.checkpoint.interval", 10),
+                    Boolean.getBoolean("proc.checkpoint.delta"), CHECKPOINT_FULL_INTERVAL);
+        }
+        DistributedEvaluator coordinator = null;
+        String port = System.getProperty("proc.coordinator");
+        if (port != null) {
+            coordinator = new DistributedEvaluator(Integer.parseInt(port), BATCH_SIZE,
+                    Integer.getInteger("proc.worker.timeout", WORKER_TIMEOUT));
+            genetics.setEvaluator(coordinator);
+        }
+        try {
+            while (genetics.getGeneration() < generations) {
+                long start = System.nanoTime();
+                NeuralNetwork[] bestBrains = genetics.evolve();
+                bestBrains[0].saveWeights(outputFile);
+                if (checkpoint != null) {
+                    checkpoint.offer(genetics);
+                }
+                long millis = (System.nanoTime() - start) / 1000000;
+                System.out.println("Generation " + genetics.getGeneration() + ": average score " + genetics.getScore()
+                        + ", high score " + genetics.getHighScore() + " (" + millis + " ms)");
+            }
+        } finally {
+            pool.shutdown();
+            if (coordinator != null) {
+                coordinator.close();
+            }
+            if (checkpoint != null) {
+                checkpoint.close();
+            }
+        }
+        FitnessCache cache = genetics.getFitnessCache();
+        if (cache != null) {
+            System.out.println("Fitness cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses");
+        }
+        System.out.println("Best brain saved to " + outputFile);
+    }
+}
@@ -0,0 +1,177 @@
+package proc.sketches;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Island model: K populations that evolve independently, every one on its own thread with its own
+ * seed derived from the seed of the model (see Seeds). Every few generations an island sends copies
+ * of its best brains to another island, which puts them in its next generation. The brains are handed
+ * over through lock-free queues and an island never waits for another one, so the islands share no
+ * barrier and no lock while they evolve. Because of that, the generation in which migrants arrive
+ * depends on the speed of the threads: every island is reproducible from the seed of the model until
+ * its first migrants arrive.
+ */
+class IslandModel {
+
+    enum Topology {
+        RING,       //island i sends its migrants to island i + 1
+        RANDOM      //every migration goes to a random other island
+    }
+
+    private Genetics[] islands;
+    private ArrayList<ConcurrentLinkedQueue<NeuralNetwork[]>> inboxes;     //migrants sent to every island
+    private Topology topology;
+    private int migrationInterval;  //number of generations between two migrations
+    private SplittableRandom[] destinations;    //picks the destinations of the migrants of every island
+
+    //best brain of every island over all generations, only written by the thread of the island
+    private NeuralNetwork[] champions;
+    private int[] championScores;
+
+    /**
+     * @param islandCount number of islands, every island runs on its own thread
+     * @param popSize size of the population of every island
+     * @param radius radius of the cube being played in
+     * @param tileSize size of the tiles generated in the cube
+     * @param fov distance the players can see
+     * @param migrationInterval number of generations between two migrations
+     * @param migrants number of best brains an island sends every migration
+     * @param topology where the migrants of an island go
+     */
+    IslandModel(int islandCount, int popSize, int radius, int tileSize, int fov,
+                int migrationInterval, int migrants, Topology topology) {
+        this(islandCount, popSize, radius, tileSize, fov, migrationInterval, migrants, topology,
+                RandomStreams.current().nextLong());
+    }
+
+    /**
+     * Creates an island model whose islands derive their seeds from the given seed
+     * @param seed seed of the model, island i gets Seeds.derive(seed, Seeds.ISLANDS, i)
+     */
+    IslandModel(int islandCount, int popSize, int radius, int tileSize, int fov,
+                int migrationInterval, int migrants, Topology topology, long seed) {
+        if (islandCount < 1 || migrationInterval < 1) {
+            throw new IllegalArgumentException("An island model needs at least one island and a migration interval of at least 1");
+        }
+        this.topology = topology;
+        this.migrationInterval = migrationInterval;
+        islands = new Genetics[islandCount];
+        inboxes = new ArrayList<ConcurrentLinkedQueue<NeuralNetwork[]>>();
+        destinations = new SplittableRandom[islandCount];
+        for (int i = 0; i < islandCount; i++) {
+            long islandSeed = Seeds.derive(seed, Seeds.ISLANDS, i);
+            islands[i] = new Genetics(popSize, radius, tileSize, fov, islandSeed);
+            destinations[i] = new SplittableRandom(Seeds.derive(islandSeed, Seeds.MIGRATION, 0));
+            //the thread of the island plays all its matches, the islands are the parallelism
+            islands[i].setExecutor(null);
+            islands[i].setMigrants(migrants);
+            inboxes.add(new ConcurrentLinkedQueue<NeuralNetwork[]>());
+        }
+        champions = new NeuralNetwork[islandCount];
+        championScores = new int[islandCount];
+    }
+
+    /**
+     * Evolves every island for the given number of generations, returns when all islands are done
+     */
+    void evolve(final int generations) {
+        Thread[] threads = new Thread[islands.length];
+        final Throwable[] failures = new Throwable[islands.length];
+        for (int i = 0; i < islands.length; i++) {
+            final int island = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        evolveIsland(island, generations);
+                    } catch (Throwable e) {
+                        failures[island] = e;
+                    }
+                }
+            }, "island-" + i);
+            threads[i].start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while evolving the islands", e);
+        }
+        for (Throwable failure : failures) {
+            if (failure != null) {
+                throw new IllegalStateException("An island failed", failure);
+            }
+        }
+    }
+
+    /**
+     * The loop of one island, runs on the thread of the island
+     */
+    private void evolveIsland(int island, int generations) {
+        Genetics genetics = islands[island];
+        SplittableRandom random = destinations[island];
+        for (int g = 0; g < generations && !Thread.currentThread().isInterrupted(); g++) {
+            NeuralNetwork[] bestBrains = genetics.evolve();
+            if (champions[island] == null || genetics.getHighScore() > championScores[island]) {
+                champions[island] = bestBrains[0];
+                championScores[island] = genetics.getHighScore();
+            }
+            if (islands.length > 1 && genetics.getGeneration() % migrationInterval == 0) {
+                inboxes.get(target(island, random)).offer(genetics.emigrants());
+            }
+            //take in whatever has arrived, without waiting for the other islands
+            ArrayList<NeuralNetwork> arrived = new ArrayList<NeuralNetwork>();
+            NeuralNetwork[] migrants;
+            while ((migrants = inboxes.get(island).poll()) != null) {
+                for (NeuralNetwork brain : migrants) {
+                    arrived.add(brain);
+                }
+            }
+            if (!arrived.isEmpty()) {
+                genetics.immigrate(arrived.toArray(new NeuralNetwork[0]));
+            }
+        }
+    }
+
+    private int target(int island, SplittableRandom random) {
+        if (topology == Topology.RING) {
+            return (island + 1) % islands.length;
+        }
+        //any island except this one
+        int other = random.nextInt(islands.length - 1);
+        return other >= island ? other + 1 : other;
+    }
+
+    /**
+     * returns the brain with the highest score of all islands over all generations,
+     * only to be called when evolve has returned
+     */
+    NeuralNetwork getChampion() {
+        int best = 0;
+        for (int i = 1; i < islands.length; i++) {
+            if (championScores[i] > championScores[best]) {
+                best = i;
+            }
+        }
+        return champions[best];
+    }
+
+    int getChampionScore() {
+        int best = 0;
+        for (int score : championScores) {
+            best = Math.max(best, score);
+        }
+        return best;
+    }
+
+    Genetics[] getIslands() {
+        return islands;
+    }
+}
@@ -27,18 +27,18 @@ public class Main extends PApplet {
     int navPointSize = 20;
     int radius = 5;
     int popSize = 1000;
+    //precision the shown players are frozen to with -Dproc.freeze=FLOAT32 or INT8, by default they use their own brains
+    FrozenNetwork.Precision freeze = freezePrecision();
 
     public void settings() {
         size(1000, 700);
         scores = new ArrayList<Float>();
         scores.add((float)0);
-        genetics = new Genetics(this, popSize, navPointSize, radius);
+        genetics = new Genetics(popSize, navPointSize, radius);
         bestBrains = genetics.evolve();
-        Player player1 = new Player(this);
-        player1.setBrain(bestBrains[0]);
-        Player player2 = new Player(this);
-        player2.setBrain(bestBrains[1]);
-        game = new PlayField(this, radius, navPointSize, player1, player2);
+        Player player1 = champion(bestBrains[0]);
+        Player player2 = champion(bestBrains[1]);
+        game = new PlayField(radius, navPointSize, player1, player2);
         game.generate();
         scores.add(genetics.getScore());
         //game = new PlayField(radius, navPointSize);
@@ -50,7 +50,7 @@ public class Main extends PApplet {
         //game.updateAI();
         //game.show();
         game.updateAI();
-        game.show();
+        game.show(this);
         if (!game.player1.isAlive() && !game.player2.isAlive()) {
             print("lost!");
             timer = moveTime + 1;
@@ -62,11 +62,9 @@ public class Main extends PApplet {
                 scores.remove(0);
             }
             scores.add(genetics.getScore());
-            Player player1 = new Player(this);
-            player1.setBrain(bestBrains[0]);
-            Player player2 = new Player(this);
-            player2.setBrain(bestBrains[1]);
-            game = new PlayField(this, radius, navPointSize, player1, player2);
+            Player player1 = champion(bestBrains[0]);
+            Player player2 = champion(bestBrains[1]);
+            game = new PlayField(radius, navPointSize, player1, player2);
 
             game.generate();
 
@@ -78,6 +76,26 @@ public class Main extends PApplet {
         delay(200);
     }
 
+    /**
+     * returns a player with the given brain, frozen when -Dproc.freeze is set
+     */
+    Player champion(NeuralNetwork brain) {
+        Player player = new Player();
+        player.setBrain(brain);
+        if (freeze != null) {
+            player.freezeBrain(freeze);
+        }
+        return player;
+    }
+
+    /**
+     * returns the precision given with -Dproc.freeze, or null when the players should not be frozen
+     */
+    static FrozenNetwork.Precision freezePrecision() {
+        String precision = System.getProperty("proc.freeze");
+        return precision == null ? null : FrozenNetwork.Precision.valueOf(precision.toUpperCase());
+    }
+
     void drawGraph() {
         pushMatrix();
         rectMode(CORNER);
@@ -125,7 +143,7 @@ public class Main extends PApplet {
             moveTime = 1000;
             print(moveTime);
         } else if (key == 's') {
-            bestBrains[0].saveWeights("weights.txt");
+            bestBrains[0].saveWeights("weights.bin");
         }
     }
 
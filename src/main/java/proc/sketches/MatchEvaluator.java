@@ -0,0 +1,178 @@
+package proc.sketches;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Plays the matches of a generation in this JVM. The matches are divided into chunks that run as separate tasks on an executor, every chunk plays
+ * its matches in lockstep with its own BatchedInference. Every match has its own PlayField and cube
+ * and every player plays in one match only, so the tasks share no mutable state. The best players
+ * are collected while the matches finish, every chunk in its own TopK that is merged at the end.
+ * Every thread keeps the fields of its earlier matches and clears them for its next matches, so a
+ * match allocates no board.
+ */
+class MatchEvaluator implements PopulationEvaluator {
+    //the fields of the matches played on every thread, reused by the next matches of that thread
+    private static final ThreadLocal<ArrayList<PlayField>> FIELDS = ThreadLocal.withInitial(ArrayList::new);
+
+    private ExecutorService executor;   //runs the chunks of matches, null to play on the calling thread
+    private int parallelism;            //number of threads of the executor
+
+    /**
+     * @param executor executor to play the matches on, a ForkJoinPool or any other executor,
+     *                 or null to play all matches on the thread calling evaluate
+     */
+    MatchEvaluator(ExecutorService executor) {
+        this.executor = executor;
+        if (executor == null) {
+            parallelism = 1;
+        } else if (executor instanceof ForkJoinPool) {
+            parallelism = ((ForkJoinPool) executor).getParallelism();
+        } else {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    @Override
+    public void evaluate(final Player[] players, final long[] seeds, final int radius, final int tileSize,
+                         final int maxGameTime, final TopK best) {
+        best.clear();
+        if (players.length % 2 == 1) {
+            best.offer(players.length - 1, players[players.length - 1].getScore());
+        }
+        int matches = players.length / 2;
+        if (executor == null) {
+            play(players, seeds, 0, matches, radius, tileSize, maxGameTime, best);
+            return;
+        }
+        //a few chunks per thread so threads that finish early can take over work
+        int chunks = Math.max(1, Math.min(matches, 4 * parallelism));
+        ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int c = 0; c < chunks; c++) {
+            final int from = (int) ((long) matches * c / chunks);
+            final int to = (int) ((long) matches * (c + 1) / chunks);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    TopK chunkBest = new TopK(best.capacity());
+                    play(players, seeds, from, to, radius, tileSize, maxGameTime, chunkBest);
+                    synchronized (best) {
+                        best.addAll(chunkBest);
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while playing the matches", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A match failed", e.getCause());
+        }
+    }
+
+    /**
+     * Plays the matches with indices [from, to) in lockstep: every turn all players that are still in a
+     * match think together in one batch, after which every field moves its players.
+     * The players are offered to best as soon as their match has finished
+     */
+    static void play(Player[] players, long[] seeds, int from, int to, int radius, int tileSize, int maxGameTime,
+                     TopK best) {
+        int matches = to - from;
+        if (matches <= 0) {
+            return;
+        }
+        //reset the playing fields
+        ArrayList<PlayField> fields = FIELDS.get();
+        PlayField[] playFields = new PlayField[matches];
+        for (int i = 0; i < matches; i++) {
+            Player player1 = players[2 * (from + i)];
+            Player player2 = players[2 * (from + i) + 1];
+            if (i == fields.size()) {
+                fields.add(new PlayField(radius, tileSize, player1, player2));
+            } else if (fields.get(i).cube.size != radius || fields.get(i).cube.navPointSize != tileSize) {
+                fields.set(i, new PlayField(radius, tileSize, player1, player2));
+            }
+            playFields[i] = fields.get(i);
+            playFields[i].setPlayers(player1, player2);
+            playFields[i].setSeed(seeds[from + i]);
+            playFields[i].generate();
+        }
+        NeuralNetwork brain = players[2 * from].readBrain();
+        BatchedInference batch = new BatchedInference(brain.input_nodes, brain.hidden_nodes, brain.output_nodes,
+                2 * matches);
+        //Play for maxGameTime turns
+        int time = 0;
+        int playing = matches;
+        while (time < maxGameTime && playing > 0) {
+            //let every player that is still in a game think at once
+            for (PlayField playField : playFields) {
+                if (playField != null) {
+                    playField.queueAI(batch);
+                }
+            }
+            batch.run();
+            for (int i = 0; i < matches; i++) {
+                if (playFields[i] != null) {
+                    playFields[i].moveAI();
+                    //if both have died stop playing
+                    if (!addScores(playFields[i].player1, playFields[i].player2)) {
+                        playFields[i] = null;
+                        playing--;
+                        offerMatch(players, from + i, best);
+                    }
+                }
+            }
+            time += 1;
+        }
+        //the matches that ran out of time
+        for (int i = 0; i < matches; i++) {
+            if (playFields[i] != null) {
+                offerMatch(players, from + i, best);
+            }
+        }
+    }
+
+    private static void offerMatch(Player[] players, int match, TopK best) {
+        best.offer(2 * match, players[2 * match].getScore());
+        best.offer(2 * match + 1, players[2 * match + 1].getScore());
+    }
+
+    /**
+     * Adds the score of one played turn to both players of a match
+     * @return whether at least one of the players is still alive
+     */
+    static boolean addScores(Player player1, Player player2) {
+        //How score is added can be changed to train the AI on different tactics
+        //These settings are the settings for the creating of the hard AI difficulty
+        if (player1.hasPU()) {
+            player1.addScore(1);
+            player2.addPowerUp(false);
+        }
+        if (player1.isAlive()) {
+            //player1.addScore(1);
+            if (!player2.isAlive()) {
+                //player1.addScore(10);
+            }
+        }
+        if (player2.hasPU()) {
+            player2.addScore(1);
+            player2.addPowerUp(false);
+        }
+        if (player2.isAlive()) {
+            //player2.addScore(1);
+            if (!player1.isAlive()) {
+                //player2.addScore(10);
+            }
+        }
+        return player1.isAlive() || player2.isAlive();
+    }
+}
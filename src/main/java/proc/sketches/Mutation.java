@@ -0,0 +1,48 @@
+package proc.sketches;
+
+import java.util.SplittableRandom;
+
+/**
+ * Mutation operator working on a flat weights array. Every weight is mutated independently with a
+ * given chance by adding a uniform random value between -0.1 and 0.1. Instead of drawing a random
+ * number for every weight, the distance to the next mutated weight is drawn from the geometric
+ * distribution, so the cost depends on the number of mutated weights and not on the total.
+ */
+final class Mutation {
+    private Mutation() {
+    }
+
+    /**
+     * Mutates each weight with the given chance
+     * @param weights the weights to mutate
+     * @param chance chance for every weight to be mutated
+     * @param random random stream to draw from
+     */
+    static void mutate(double[] weights, double chance, SplittableRandom random) {
+        if (!(chance > 0)) {
+            return;
+        }
+        if (chance >= 1) {
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] += 0.2 * random.nextDouble() - 0.1;
+            }
+            return;
+        }
+        double logMiss = Math.log1p(-chance);     //log of the chance that a weight is not mutated
+        long i = skip(random, logMiss);
+        while (i < weights.length) {
+            weights[(int) i] += 0.2 * random.nextDouble() - 0.1;
+            i += 1 + skip(random, logMiss);
+        }
+    }
+
+    /**
+     * Draws the number of weights before the next mutated weight: k with chance (1-p)^k * p
+     * @param logMiss log(1 - p)
+     */
+    private static long skip(SplittableRandom random, double logMiss) {
+        //1 - nextDouble() lies in (0, 1], so the logarithm is finite
+        double skip = Math.floor(Math.log(1 - random.nextDouble()) / logMiss);
+        return skip >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (long) skip;
+    }
+}
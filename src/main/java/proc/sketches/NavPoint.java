@@ -4,8 +4,6 @@ import processing.core.PApplet;
 import java.io.IOException;
 
 class NavPoint {
-    private PApplet sketch;
-
     int[] location;     //Location of the NavPoint in the grid
     int size;           //Size of the rendered square (size x size)
     int face;           //Which face of the cube the NavPoint is on. {1,2,3,4,5,6}
@@ -17,8 +15,6 @@ class NavPoint {
     int index;          //Index of this point in the NavPoint Array
     int numOfNavPoints; //Total amount of NavPoints
 
-    private Occupation occupation;
-
     //The following 2 values are used for rendering NavPoints in the correct place and are in alignment with these
     //values in the NavCube class.
     private int faceLength;
@@ -37,20 +33,23 @@ class NavPoint {
      * @param index Index of this point in the NavPoint Array.
      * @param numOfNavPoints total amount of NavPoints
      */
-    public NavPoint(PApplet sketch, int[] loc, int size, int face, int faceEdge, int index, int numOfNavPoints){
-        this.sketch = sketch;
+    public NavPoint(int[] loc, int size, int face, int faceEdge, int index, int numOfNavPoints){
         this.location = loc;
         this.size = size;
         this.face = face;
         this.faceEdge = faceEdge;
-        this.occupation = Occupation.EMPTY;
         this.index = index;
         this.numOfNavPoints = numOfNavPoints;
         this.faceSurface = numOfNavPoints / 6;
         this.faceLength = (int) Math.sqrt(faceSurface);
     }
 
-    public void showPoint() {
+    /**
+     * Draws this NavPoint as a square coloured by its occupation
+     * @param sketch sketch to draw on
+     * @param occupation what is on this NavPoint, kept by the NavCube
+     */
+    public void showPoint(PApplet sketch, Occupation occupation) {
         sketch.rectMode(sketch.CENTER);
         sketch.fill(255);
         sketch.stroke(0);
@@ -68,23 +67,6 @@ class NavPoint {
         //text(this.index, -1 * this.location[1], -1 * this.location[0]);
     }
 
-    /**
-     * Sets the occupation of the NavPoint using an Enum.
-     * Possible options are: EMPTY, PLAYERTAIL, PLAYERHEAD, AITAIL, AIHEAD, POWERUP
-     * @param occupation the new occupation of the NavPoint
-     */
-    public void setOccupation(Occupation occupation){
-        this.occupation = occupation;
-    }
-
-    /**
-     * Gets the occupation of the NavPoint using an Enum.
-     * Possible options are: EMPTY, PLAYERTAIL, PLAYERHEAD, AITAIL, AIHEAD, POWERUP
-     */
-    public Occupation getOccupation(){
-        return this.occupation;
-    }
-
     /**
      * Gets the face this NavPoint is on
      */
@@ -0,0 +1,313 @@
+package proc.sketches;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles the feedforward of a network topology into a class at runtime. The generated method is
+ * fully unrolled: every weight is read from a constant index of the flat weights array, and every
+ * node value lives in its own local variable, so the JIT sees no loops, no dimension checks and can
+ * keep the activations in registers. Rows are summed in the same order as ScalarKernel, so the
+ * output is identical to NeuralNetwork.feedForward with the exact sigmoid.
+ *
+ * The class is defined as a hidden class when the JVM supports it (Java 15+), otherwise in its own
+ * class loader. Compiled topologies are cached, one instance serves all networks with that topology.
+ * Starting with -Dproc.compile=false turns the compiler off.
+ */
+class NetworkCompiler {
+    private static final boolean ENABLED = !"false".equals(System.getProperty("proc.compile"));
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    //compiled networks per topology
+    private static final ConcurrentHashMap<String, CompiledNetwork> CACHE = new ConcurrentHashMap<String, CompiledNetwork>();
+    //topologies that could not be compiled, so they are not generated again
+    private static final Set<String> NOT_COMPILED = ConcurrentHashMap.newKeySet();
+
+    //constant pool indices of the fixed part of the generated class
+    private static final int THIS_CLASS = 2;
+    private static final int OBJECT_CLASS = 4;
+    private static final int INTERFACE_CLASS = 6;
+    private static final int OBJECT_INIT = 10;
+    private static final int MATH_EXP = 16;
+    private static final int FEED_FORWARD_NAME = 17;
+    private static final int FEED_FORWARD_DESCRIPTOR = 18;
+    private static final int CODE = 19;
+    private static final int INIT_NAME = 7;
+    private static final int INIT_DESCRIPTOR = 8;
+    private static final int FIXED_CONSTANTS = 19;
+
+    /**
+     * returns the compiled feedforward for networks with the given number of nodes per layer,
+     * or null when the compiler is turned off or the topology is too large for one method
+     */
+    static CompiledNetwork compile(int[] layerSizes) {
+        if (!ENABLED) {
+            return null;
+        }
+        String key = Arrays.toString(layerSizes);
+        CompiledNetwork compiled = CACHE.get(key);
+        if (compiled == null && !NOT_COMPILED.contains(key)) {
+            compiled = define(layerSizes);
+            if (compiled == null) {
+                NOT_COMPILED.add(key);
+                return null;
+            }
+            CompiledNetwork previous = CACHE.putIfAbsent(key, compiled);
+            if (previous != null) {
+                compiled = previous;
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * generates, defines and instantiates the class for a topology
+     * @return the compiled network, or null when the topology can not be compiled
+     */
+    private static CompiledNetwork define(int[] layerSizes) {
+        StringBuilder name = new StringBuilder("proc/sketches/CompiledNetwork");
+        for (int size : layerSizes) {
+            name.append('_').append(size);
+        }
+        try {
+            byte[] classFile = generate(name.toString(), layerSizes);
+            if (classFile == null) {
+                return null;
+            }
+            Class<?> type = defineClass(name.toString().replace('/', '.'), classFile);
+            return (CompiledNetwork) type.getDeclaredConstructor().newInstance();
+        } catch (IOException | ReflectiveOperationException | LinkageError e) {
+            System.out.println("Error: could not compile network " + Arrays.toString(layerSizes));
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Defines the class as a hidden class through MethodHandles.Lookup.defineHiddenClass when it exists,
+     * and through a class loader of its own otherwise
+     */
+    private static Class<?> defineClass(String name, final byte[] classFile) throws ReflectiveOperationException {
+        try {
+            Class<?> option = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            Method defineHidden = MethodHandles.Lookup.class.getMethod("defineHiddenClass",
+                    byte[].class, boolean.class, Array.newInstance(option, 0).getClass());
+            MethodHandles.Lookup lookup = (MethodHandles.Lookup) defineHidden.invoke(MethodHandles.lookup(),
+                    classFile, true, Array.newInstance(option, 0));
+            return lookup.lookupClass();
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            //Java 14 or older, no hidden classes
+        }
+        ClassLoader loader = new ClassLoader(NetworkCompiler.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String className) throws ClassNotFoundException {
+                if (!className.equals(name)) {
+                    throw new ClassNotFoundException(className);
+                }
+                return defineClass(className, classFile, 0, classFile.length);
+            }
+        };
+        return loader.loadClass(name);
+    }
+
+    /**
+     * Generates the class file of a CompiledNetwork implementation for a topology
+     * @return the class file, or null when the code does not fit in one method
+     */
+    static byte[] generate(String className, int[] layerSizes) throws IOException {
+        ArrayList<Integer> integers = new ArrayList<Integer>();   //int constants too large for sipush
+        ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+        DataOutputStream code = new DataOutputStream(codeBytes);
+
+        //local variables: 0 this, 1 weights, 2 input, 3 output, from 4 on two slots per node value
+        int[] firstSlot = new int[layerSizes.length];
+        int slot = 4;
+        for (int k = 0; k < layerSizes.length - 1; k++) {
+            firstSlot[k] = slot;
+            slot += 2 * layerSizes[k];
+        }
+        int maxLocals = slot;
+
+        //copy the input values into local variables
+        for (int j = 0; j < layerSizes[0]; j++) {
+            code.writeByte(0x2c);                               //aload_2
+            pushInt(code, j, integers);
+            code.writeByte(0x31);                               //daload
+            localVariable(code, 0x39, firstSlot[0] + 2 * j);    //dstore
+        }
+
+        int index = 0;
+        for (int k = 0; k < layerSizes.length - 1; k++) {
+            boolean last = k == layerSizes.length - 2;
+            for (int i = 0; i < layerSizes[k + 1]; i++) {
+                if (last) {
+                    code.writeByte(0x2d);                       //aload_3
+                    pushInt(code, i, integers);
+                }
+                code.writeByte(0x0f);                           //dconst_1, numerator of the sigmoid
+                //sum = bias weight + weights * previous nodes
+                code.writeByte(0x2b);                           //aload_1
+                pushInt(code, index++, integers);
+                code.writeByte(0x31);                           //daload
+                for (int j = 0; j < layerSizes[k]; j++) {
+                    code.writeByte(0x2b);                       //aload_1
+                    pushInt(code, index++, integers);
+                    code.writeByte(0x31);                       //daload
+                    localVariable(code, 0x18, firstSlot[k] + 2 * j);    //dload
+                    code.writeByte(0x6b);                       //dmul
+                    code.writeByte(0x63);                       //dadd
+                }
+                //1 / (1 + exp(-sum))
+                code.writeByte(0x77);                           //dneg
+                code.writeByte(0xb8);                           //invokestatic Math.exp
+                code.writeShort(MATH_EXP);
+                code.writeByte(0x0f);                           //dconst_1
+                code.writeByte(0x63);                           //dadd
+                code.writeByte(0x6f);                           //ddiv
+                if (last) {
+                    code.writeByte(0x52);                       //dastore
+                } else {
+                    localVariable(code, 0x39, firstSlot[k + 1] + 2 * i);    //dstore
+                }
+            }
+            if (code.size() > MAX_CODE_LENGTH) {
+                return null;
+            }
+        }
+        code.writeByte(0xb1);                                   //return
+        if (code.size() > MAX_CODE_LENGTH) {
+            return null;
+        }
+
+        ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(classBytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);                                      //minor version
+        out.writeShort(52);                                     //major version, Java 8
+
+        out.writeShort(FIXED_CONSTANTS + integers.size() + 1);
+        utf8(out, className);                                   //1
+        reference(out, 7, 1);                                   //2 this class
+        utf8(out, "java/lang/Object");                          //3
+        reference(out, 7, 3);                                   //4 super class
+        utf8(out, "proc/sketches/CompiledNetwork");             //5
+        reference(out, 7, 5);                                   //6 interface
+        utf8(out, "<init>");                                    //7
+        utf8(out, "()V");                                       //8
+        pair(out, 12, INIT_NAME, INIT_DESCRIPTOR);              //9
+        pair(out, 10, OBJECT_CLASS, 9);                         //10 Object.<init>
+        utf8(out, "java/lang/Math");                            //11
+        reference(out, 7, 11);                                  //12
+        utf8(out, "exp");                                       //13
+        utf8(out, "(D)D");                                      //14
+        pair(out, 12, 13, 14);                                  //15
+        pair(out, 10, 12, 15);                                  //16 Math.exp
+        utf8(out, "feedForward");                               //17
+        utf8(out, "([D[D[D)V");                                 //18
+        utf8(out, "Code");                                      //19
+        for (int value : integers) {
+            out.writeByte(3);                                   //CONSTANT_Integer
+            out.writeInt(value);
+        }
+
+        out.writeShort(0x0001 | 0x0010 | 0x0020);               //public final super
+        out.writeShort(THIS_CLASS);
+        out.writeShort(OBJECT_CLASS);
+        out.writeShort(1);
+        out.writeShort(INTERFACE_CLASS);
+        out.writeShort(0);                                      //no fields
+
+        out.writeShort(2);
+        //public constructor calling Object.<init>
+        out.writeShort(0x0001);
+        out.writeShort(INIT_NAME);
+        out.writeShort(INIT_DESCRIPTOR);
+        out.writeShort(1);
+        out.writeShort(CODE);
+        out.writeInt(12 + 5);
+        out.writeShort(1);                                      //max stack
+        out.writeShort(1);                                      //max locals
+        out.writeInt(5);
+        out.writeByte(0x2a);                                    //aload_0
+        out.writeByte(0xb7);                                    //invokespecial Object.<init>
+        out.writeShort(OBJECT_INIT);
+        out.writeByte(0xb1);                                    //return
+        out.writeShort(0);                                      //no exception handlers
+        out.writeShort(0);                                      //no attributes
+
+        //public void feedForward(double[] weights, double[] input, double[] output)
+        out.writeShort(0x0001);
+        out.writeShort(FEED_FORWARD_NAME);
+        out.writeShort(FEED_FORWARD_DESCRIPTOR);
+        out.writeShort(1);
+        out.writeShort(CODE);
+        out.writeInt(12 + code.size());
+        //output array and index (2), numerator (2), sum (2), weight (2), node (2)
+        out.writeShort(10);
+        out.writeShort(maxLocals);
+        out.writeInt(code.size());
+        codeBytes.writeTo(out);
+        out.writeShort(0);
+        out.writeShort(0);
+
+        out.writeShort(0);                                      //no class attributes
+        return classBytes.toByteArray();
+    }
+
+    /**
+     * writes the shortest instruction pushing an int constant
+     */
+    private static void pushInt(DataOutputStream code, int value, ArrayList<Integer> integers) throws IOException {
+        if (value <= 5) {
+            code.writeByte(0x03 + value);                       //iconst_<value>
+        } else if (value <= Byte.MAX_VALUE) {
+            code.writeByte(0x10);                               //bipush
+            code.writeByte(value);
+        } else if (value <= Short.MAX_VALUE) {
+            code.writeByte(0x11);                               //sipush
+            code.writeShort(value);
+        } else {
+            integers.add(value);
+            code.writeByte(0x13);                               //ldc_w
+            code.writeShort(FIXED_CONSTANTS + integers.size());
+        }
+    }
+
+    /**
+     * writes a load or store of a local variable, using the wide form for slots above 255
+     */
+    private static void localVariable(DataOutputStream code, int opcode, int slot) throws IOException {
+        if (slot <= 255) {
+            code.writeByte(opcode);
+            code.writeByte(slot);
+        } else {
+            code.writeByte(0xc4);                               //wide
+            code.writeByte(opcode);
+            code.writeShort(slot);
+        }
+    }
+
+    private static void utf8(DataOutputStream out, String value) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(value);
+    }
+
+    private static void reference(DataOutputStream out, int tag, int index) throws IOException {
+        out.writeByte(tag);
+        out.writeShort(index);
+    }
+
+    private static void pair(DataOutputStream out, int tag, int first, int second) throws IOException {
+        out.writeByte(tag);
+        out.writeShort(first);
+        out.writeShort(second);
+    }
+}
@@ -1,26 +1,42 @@
 package proc.sketches;
 
 import Jama.*;                          //library for easy Matrix representation and linear algebra
-import processing.core.PApplet;
-import java.io.File;                    //for creating new files
-import java.io.FileWriter;              //for writing weights to a txt file
 import java.io.IOException;             //for error handling
 import java.io.FileNotFoundException;   //for error handling
-import java.net.URISyntaxException;
-import java.util.Scanner;               //for reading weights from a txt file
-import java.util.Random;                //for generation random numbers
+import java.nio.file.NoSuchFileException;   //for error handling
+import java.util.SplittableRandom;      //for generation random numbers
 
 public class NeuralNetwork {
-    PApplet sketch;
+    //kernel doing the multiply-accumulate and activation of every layer, SIMD when available
+    static final DenseKernel KERNEL = DenseKernel.select();
 
     int input_nodes;    //number of input nodes
     int[] hidden_nodes; //number of hidden nodes per hidden layer
     int output_nodes;   //number of output nodes
     int layers;         //number of total layers in the network
 
-    //Array of size (layers - 1) storing the weights of the network between each two preceding layers
-    // represented in matrix objects
-    private Matrix[] weights;
+    int[] layerSizes;   //number of nodes in every layer from input to output (without bias nodes)
+    int[] layerOffsets; //index in weights where the weights of each weight layer start
+
+    //Array storing all weights of the network between each two preceding layers in one block.
+    //Weight layer k is stored row by row as a (layerSizes[k + 1] x (layerSizes[k] + 1)) matrix starting
+    //at layerOffsets[k], the first column of each row is for the bias
+    private double[] weights;
+    //true when weights may be shared with copies of this network. Shared weights are never changed,
+    //the first change copies them (see writableWeights)
+    private boolean shared;
+    //128 bit hash of the weights, computed when first asked for and forgotten whenever the weights change
+    private boolean hashed;
+    private long hashLow;
+    private long hashHigh;
+
+    private Activation activationMode;  //implementation of the sigmoid used by this network
+    private CompiledNetwork compiled;   //generated feedforward for the topology of this network, may be null
+
+    //Scratch buffers holding the activations of the layer being read and the layer being written,
+    //index 0 always holds the bias node
+    private double[] current;
+    private double[] next;
 
     /**
      * Creates a neural network of a certain size and amount of hidden layers
@@ -29,41 +45,97 @@ public class NeuralNetwork {
      * @param hidden number of input nodes per hidden layer
      * @param output number of output nodes
      */
-    public NeuralNetwork(PApplet sketch, int input, int[] hidden, int output) {
-        this.sketch = sketch;
+    public NeuralNetwork(int input, int[] hidden, int output) {
+        this(input, hidden, output, RandomStreams.current());
+    }
+
+    /**
+     * Creates a neural network with random weights between -1 and 1 drawn from the given stream
+     * @param input number of input nodes
+     * @param hidden number of input nodes per hidden layer
+     * @param output number of output nodes
+     * @param random random stream to draw the weights from
+     */
+    public NeuralNetwork(int input, int[] hidden, int output, SplittableRandom random) {
         input_nodes = input;
         hidden_nodes = hidden;
         output_nodes = output;
         layers = hidden.length + 2;
 
-        weights = new Matrix[hidden.length + 1];
+        layerSizes = new int[layers];
+        layerSizes[0] = input;
+        System.arraycopy(hidden, 0, layerSizes, 1, hidden.length);
+        layerSizes[layers - 1] = output;
 
-        //make sure the weight matrices all have the correct size
-        //the first column of each matrix is for the bias
-        weights[0] = new Matrix(hidden[0], input + 1);
-        for (int i = 1; i < hidden.length; i++) {
-            weights[i] = new Matrix(hidden[i], hidden[i - 1] + 1);
+        //make sure every weight layer gets the correct size
+        //the first column of each layer is for the bias
+        layerOffsets = new int[layers - 1];
+        int total = 0;
+        int widest = 0;
+        for (int k = 0; k < layers - 1; k++) {
+            layerOffsets[k] = total;
+            total += layerSizes[k + 1] * (layerSizes[k] + 1);
+            widest = Math.max(widest, layerSizes[k] + 1);
+        }
+        widest = Math.max(widest, layerSizes[layers - 1] + 1);
+        weights = new double[total];
+        current = new double[widest];
+        next = new double[widest];
+        activationMode = Activation.defaultMode();
+        //the compiled code uses the scalar sums, so it only replaces the scalar kernel and is not used with the SIMD kernel
+        if (KERNEL instanceof ScalarKernel) {
+            compiled = NetworkCompiler.compile(layerSizes);
         }
-        weights[hidden.length] = new Matrix(output, hidden[hidden.length - 1] + 1);
 
-        Random r = new Random();
+        //give each weight a random value between -1 and 1
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = 2 * random.nextDouble() - 1;
+        }
+    }
 
-        //give each element in the matrices a random value between -1 and 1
-        for (Matrix weight : weights) {
-            for (int i = 0; i < weight.getRowDimension(); i++) {
-                for (int j = 0; j < weight.getColumnDimension(); j++) {
-                    double randNum = 2 * r.nextDouble() - 1;
-                    weight.set(i, j, randNum);
-                }
-            }
+    /**
+     * Creates a network with the same topology and activation as the template, using the given
+     * weights array without initializing it
+     * @param template network to take the topology from
+     * @param weights flat weights for the new network
+     * @param shared whether the weights array is also used by other networks
+     */
+    private NeuralNetwork(NeuralNetwork template, double[] weights, boolean shared) {
+        input_nodes = template.input_nodes;
+        hidden_nodes = template.hidden_nodes;
+        output_nodes = template.output_nodes;
+        layers = template.layers;
+        layerSizes = template.layerSizes;
+        layerOffsets = template.layerOffsets;
+        this.weights = weights;
+        this.shared = shared;
+        if (weights == template.weights) {
+            hashed = template.hashed;
+            hashLow = template.hashLow;
+            hashHigh = template.hashHigh;
         }
+        current = new double[template.current.length];
+        next = new double[template.next.length];
+        activationMode = template.activationMode;
+        compiled = template.compiled;
     }
 
     /**
-     * returns the full array of weights of the neural network
+     * returns the full array of weights of the neural network as one matrix per layer.
+     * The matrices are copies of the weights, changes only take effect through setWeights
      */
     public Matrix[] getWeights() {
-        return weights;
+        Matrix[] matrices = new Matrix[layers - 1];
+        for (int k = 0; k < layers - 1; k++) {
+            int rows = layerSizes[k + 1];
+            int columns = layerSizes[k] + 1;
+            double[][] layer = new double[rows][columns];
+            for (int i = 0; i < rows; i++) {
+                System.arraycopy(weights, layerOffsets[k] + i * columns, layer[i], 0, columns);
+            }
+            matrices[k] = new Matrix(layer);
+        }
+        return matrices;
     }
 
     /**
@@ -71,7 +143,40 @@ public class NeuralNetwork {
      * @param newWeights array containing matrices for each individual layer
      */
     public void setWeights(Matrix[] newWeights) {
-        weights = newWeights;
+        if (newWeights.length != layers - 1) {
+            throw new IllegalArgumentException("Expected " + (layers - 1) + " weight layers.");
+        }
+        for (int k = 0; k < layers - 1; k++) {
+            int rows = layerSizes[k + 1];
+            int columns = layerSizes[k] + 1;
+            if (newWeights[k].getRowDimension() != rows || newWeights[k].getColumnDimension() != columns) {
+                throw new IllegalArgumentException("Weight layer " + k + " must be " + rows + "x" + columns + ".");
+            }
+        }
+        //all weights are replaced, so shared weights do not have to be copied first
+        double[] weights = replaceableWeights();
+        for (int k = 0; k < layers - 1; k++) {
+            int columns = layerSizes[k] + 1;
+            double[][] layer = newWeights[k].getArray();
+            for (int i = 0; i < layerSizes[k + 1]; i++) {
+                System.arraycopy(layer[i], 0, weights, layerOffsets[k] + i * columns, columns);
+            }
+        }
+    }
+
+    /**
+     * returns the implementation of the sigmoid this network uses
+     */
+    public Activation getActivation() {
+        return activationMode;
+    }
+
+    /**
+     * Chooses the implementation of the sigmoid, see Activation for the error of every mode
+     * @param mode exact sigmoid, table lookup or rational approximation
+     */
+    public void setActivation(Activation mode) {
+        activationMode = mode;
     }
 
     /**
@@ -80,95 +185,171 @@ public class NeuralNetwork {
      *                   of the environment (preferably values in the range of [-1,1])
      */
     public double[] feedForward(double[] input_data) {
-        double[][] input_data_bias = prepareData(input_data);
-        Matrix input = new Matrix(input_data_bias);
-        Matrix hidden = weights[0].times(input);
-        activation(hidden);
-        for (int i = 1; i < layers - 1; i++) {
-            hidden = addBias(hidden);
-            hidden = weights[i].times(hidden);
-            activation(hidden);
+        double[] output = new double[output_nodes];
+        feedForward(input_data, output);
+        return output;
+    }
+
+    /**
+     * Feedforward algorithm which writes the output of the network into the given array.
+     * Only the scratch buffers of this network are used, so no objects are created
+     * @param input_data an array of double values representing the current state
+     *                   of the environment (preferably values in the range of [-1,1])
+     * @param output array of at least output_nodes elements receiving the output of the network
+     */
+    public void feedForward(double[] input_data, double[] output) {
+        CompiledNetwork compiled = compiledNetwork();
+        if (compiled != null) {
+            compiled.feedForward(weights, input_data, output);
+            return;
         }
-        Matrix output = hidden;
-        return output.getColumnPackedCopy();
+        double[] in = current;
+        double[] out = next;
+        in[0] = 1;
+        System.arraycopy(input_data, 0, in, 1, input_nodes);
+        for (int k = 0; k < layers - 1; k++) {
+            int rows = layerSizes[k + 1];
+            out[0] = 1;
+            KERNEL.dense(weights, layerOffsets[k], in, 0, layerSizes[k] + 1, out, 1, rows);
+            activation(out, 1, rows);
+            double[] swap = in;
+            in = out;
+            out = swap;
+        }
+        System.arraycopy(in, 1, output, 0, output_nodes);
     }
 
     /**
-     * Applies the activation function over all elements of the input matrix.
-     * In this case the sigmoid function is used as activations: sigmoid(x) = 1/(1+e^(-x))
-     * @param input matrix on which the activation function should be applied
+     * Applies the activation function over the calculated nodes of a layer.
+     * In this case the sigmoid function is used as activations: sigmoid(x) = 1/(1+e^(-x)),
+     * computed by the activation mode of this network
+     * @param nodes layer buffer on which the activation function should be applied
+     * @param from index of the first node
+     * @param count number of nodes in the layer
      */
-    private void activation(Matrix input) {
-        for (int i = 0; i < input.getRowDimension(); i++) {
-            input.set(i, 0, 1 /(1 + Math.exp(-1 * input.get(i, 0))));
+    void activation(double[] nodes, int from, int count) {
+        activationMode.apply(nodes, from, count);
+    }
+
+    /**
+     * returns the weights array of this network for changing it. When the weights are shared with
+     * copies of this network, this network first gets its own copy of them
+     */
+    private double[] writableWeights() {
+        if (shared) {
+            weights = weights.clone();
+            shared = false;
         }
+        hashed = false;
+        return weights;
+    }
+
+    /**
+     * returns the flat weights array of this network for weights that are loaded from elsewhere and
+     * overwrite every element. Unlike writableWeights, shared weights are not copied first
+     */
+    double[] replaceableWeights() {
+        if (shared) {
+            weights = new double[weights.length];
+            shared = false;
+        }
+        hashed = false;
+        return weights;
+    }
+
+    /**
+     * returns the low 64 bits of a 128 bit hash of the weights, see hashHigh
+     */
+    long hashLow() {
+        computeHash();
+        return hashLow;
     }
 
     /**
-     * adds a bias node to the input and transforms the input to a nx1 matrix
-     * @param data data which should be transformed
+     * returns the high 64 bits of a 128 bit hash of the weights. Networks with the same hash have the
+     * same weights, apart from a chance of about 2^-128. The hash is kept until the weights change
      */
-    private double[][] prepareData(double[] data) {
-        double[][] data_bias = new double[data.length + 1][1];
-        data_bias[0][0] = 1;
-        for (int i = 0; i < data.length; i++) {
-            data_bias[i + 1][0] = data[i];
+    long hashHigh() {
+        computeHash();
+        return hashHigh;
+    }
+
+    private void computeHash() {
+        if (hashed) {
+            return;
+        }
+        //two lanes in the style of MurmurHash3 x64 128
+        long h1 = 0x243F6A8885A308D3L;
+        long h2 = 0x13198A2E03707344L;
+        for (double weight : weights) {
+            long k = Double.doubleToRawLongBits(weight);
+            h1 = Long.rotateLeft(h1 ^ (k * 0x87C37B91114253D5L), 31) * 0x4CF5AD432745937FL;
+            h2 = (Long.rotateLeft(h2 + (k * 0x4CF5AD432745937FL), 33) * 0x87C37B91114253D5L) ^ h1;
         }
-        return data_bias;
+        h1 = Seeds.mix(h1, weights.length);
+        h2 = Seeds.mix(h2, h1);
+        hashLow = h1;
+        hashHigh = h2;
+        hashed = true;
     }
 
     /**
-     * adds a bias node to the calculated hidden nodes matrix
-     * @param hidden calculated values of the hidden nodes
+     * returns the flat weights array of this network, only to be read by the inference code
      */
-    private Matrix addBias(Matrix hidden) {
-        int newLength = hidden.getRowDimension() + 1;
-        Matrix newHidden = new Matrix(newLength, 1);
-        newHidden.set(0, 0, 1);
-        newHidden.setMatrix(1, newLength - 1, 0, 0, hidden);
-        return newHidden;
+    double[] weightData() {
+        return weights;
+    }
+
+    /**
+     * returns the generated feedforward of this network, or null when it evaluates through the kernel:
+     * with the SIMD kernel, a mode other than the exact sigmoid or a topology that could not be compiled
+     */
+    CompiledNetwork compiledNetwork() {
+        return activationMode == Activation.EXACT ? compiled : null;
     }
 
     /**
      * Applies a mutation algorithm to this matrix. Each weight has a specified chance
      * (in this case 0.1) to be changed ever so slightly (changed by a value between
-     * -0.1 and 0.1)
+     * -0.1 and 0.1). Only the mutated weights are visited, see Mutation
      */
     public void mutate(double chance) {
-        Random r = new Random();
-        for (Matrix weight : weights) {
-            for (int i = 0; i < weight.getRowDimension(); i++) {
-                for (int j = 0; j < weight.getColumnDimension(); j++) {
-                    double pick = r.nextDouble();
-                    if (pick < chance) {
-                        double randNum = 0.2 * r.nextDouble() - 0.1;
-                        weight.set(i, j, weight.get(i, j) + randNum);
-                    }
-                }
-            }
-        }
+        mutate(chance, RandomStreams.current());
+    }
+
+    /**
+     * Applies the mutation algorithm drawing from the given random stream
+     * @param chance chance for every weight to be changed
+     * @param random random stream to draw from
+     */
+    public void mutate(double chance, SplittableRandom random) {
+        Mutation.mutate(writableWeights(), chance, random);
     }
 
     /**
      * copies the current neural network and returns a new neural network containing
-     * the same weights.
+     * the same weights. The weights are shared until one of the two networks changes them,
+     * so copying is cheap for networks that are only read.
      */
     NeuralNetwork copy() {
-        NeuralNetwork newNN = new NeuralNetwork(sketch, input_nodes, hidden_nodes, output_nodes);
-        Matrix[] newWeights = new Matrix[layers - 1];
-        for (int i = 0; i < layers - 1; i++) {
-            newWeights[i] = weights[i].copy();
-        }
-        newNN.setWeights(newWeights);
-        return newNN;
+        shared = true;
+        return new NeuralNetwork(this, weights, true);
+    }
+
+    /**
+     * Creates a read-only quantized copy of this network for brains that will not be trained anymore
+     * @param precision float32 weights or int8 weights with a scale per row
+     */
+    public FrozenNetwork freeze(FrozenNetwork.Precision precision) {
+        return new FrozenNetwork(layerSizes, layerOffsets, weights, activationMode, precision);
     }
 
     /**
      * prints the weights of the neural network
      */
     public void printWeights() {
-        for (int i = 0; i < layers - 1; i++) {
-            weights[i].print(5, 2);
+        for (Matrix weight : getWeights()) {
+            weight.print(5, 2);
             System.out.println();
         }
     }
@@ -177,71 +358,37 @@ public class NeuralNetwork {
      * Implements crossover by making a choice of either picking the weight
      * of this neural network or picking the weight of the neural network parent2
      * and creating a new array of weights (in size identical to this neural net)
-     * and returns a new neural net initialized with the new weights
+     * and returns a new neural net initialized with the new weights.
+     * Both parents are left untouched
      * @param parent2 the neural net to apply crossover with
      */
     public NeuralNetwork crossOver(NeuralNetwork parent2) {
-        NeuralNetwork child = new NeuralNetwork(sketch, this.input_nodes, this.hidden_nodes, this.output_nodes);
-        Matrix[] childWeights = this.weights;
-        Matrix[] weightsP2 = parent2.getWeights();
-
-        Random r = new Random();
-        for (int k = 0; k < childWeights.length; k++) {
-            for (int i = 0; i < childWeights[k].getRowDimension(); i++) {
-                for (int j = 0; j < childWeights[k].getColumnDimension(); j++) {
-                    double randNum = r.nextDouble();
-                    if (randNum < 0.5) {
-                        childWeights[k].set(i, j, weights[k].get(i, j));
-                    } else {
-                        childWeights[k].set(i, j, weightsP2[k].get(i, j));
-                    }
-                }
-            }
-        }
-        child.setWeights(childWeights);
+        NeuralNetwork child = new NeuralNetwork(this, new double[weights.length], false);
+        Crossover.blend(weights, parent2.weights, child.weights, RandomStreams.current());
         return child;
+    }
 
+    /**
+     * Replaces the weights of this network by the crossover of two parents, reusing the weights
+     * array of this network so no memory is allocated. The parents are only read
+     * @param parent1 the first neural net to apply crossover with
+     * @param parent2 the second neural net to apply crossover with
+     * @param random random stream to draw from
+     */
+    public void inherit(NeuralNetwork parent1, NeuralNetwork parent2, SplittableRandom random) {
+        //all weights are replaced, so shared weights do not have to be copied first
+        Crossover.blend(parent1.weights, parent2.weights, replaceableWeights(), random);
     }
 
     /**
-     * saves the weights to a txt file in the following format:
-     * Matrix weights layer 1 (input x hidden_layer[0])
-     *                    <empty>
-     * Matrix weights layer 2 (hidden_layer[0] x hidden_layer[1])
-     *                    <empty>
-     *                       .
-     *                       .
-     *                    <empty>
-     * Matrix weights layer n (hidden_layer[n] x output)
+     * saves the weights to a binary file, see BrainFile for the format.
+     * An existing file with the same name is replaced
      *
      * @param fileName name of the file you want to save to
      */
     public void saveWeights(String fileName) {
-        //creates a new file
         try {
-            File weightsFile = new File(fileName);
-            if (! weightsFile.createNewFile()) {
-                System.out.println("The file already exists!");
-            }
-        } catch (IOException e) {
-            System.out.println("Error: could not create new file");
-            e.printStackTrace();
-        }
-
-        //writes to the newly crated file
-        try {
-            FileWriter file = new FileWriter(fileName);
-            for (int k = 0; k < layers - 1; k++) {
-                double[][] wLayer = weights[k].getArray();
-                for (double[] doubles : wLayer) {
-                    for (int j = 0; j < wLayer[0].length; j++) {
-                        file.write(doubles[j] + " ");
-                    }
-                    file.write(System.lineSeparator());
-                }
-                file.write(System.lineSeparator());
-            }
-            file.close();
+            BrainFile.write(layerSizes, weights, fileName);
         } catch (IOException e) {
             System.out.println("Error: could not write to the file");
             e.printStackTrace();
@@ -249,8 +396,9 @@ public class NeuralNetwork {
     }
 
     /**
-     * reads the weights from a txt file (in the current game directory)
-     * with the following format:
+     * reads the weights from a file (in the current game directory). Binary files written by
+     * saveWeights are memory mapped and copied into the weights of this network once they are checked,
+     * older txt files are imported from the following format:
      * Matrix weights layer 1 (input x hidden_layer[0])
      *                    <empty>
      * Matrix weights layer 2 (hidden_layer[0] x hidden_layer[1])
@@ -259,36 +407,43 @@ public class NeuralNetwork {
      *                       .
      *                    <empty>
      * Matrix weights layer n (hidden_layer[n] x output)
+     * The weights are only replaced when the whole file could be read, otherwise they stay unchanged
      * @param fileName name of the file you want read from
      */
     public void readWeights(String fileName) {
         try {
-            File weightsFile = new File(fileName);
-            Scanner fileReader = new Scanner(weightsFile);
-            int layerCount = 0;
-            int lineCount = 0;
-            while (fileReader.hasNextLine()) {
-                String line = fileReader.nextLine();
-                if (!line.isEmpty()) {
-                    String[] newWeights = line.split(" ");
-                    for (int i = 0; i < newWeights.length - 1; i++) {
-                        double weight = Double.parseDouble(newWeights[i]);
-                        System.out.print(weight);
-                        System.out.print(" ");
-                        weights[layerCount].set(lineCount, i, weight);
+            if (BrainFile.isBinary(fileName)) {
+                //the file is checked by map before any weight is replaced
+                BrainFile.map(layerSizes, fileName).get(replaceableWeights());
+            } else {
+                double[][][] layerWeights = BrainFile.importText(fileName);
+                if (layerWeights.length != layers - 1) {
+                    throw new IOException(fileName + " has " + layerWeights.length + " weight layers, expected " + (layers - 1));
+                }
+                //all rows are checked and gathered first, so a bad file leaves the weights as they were
+                double[] imported = new double[weights.length];
+                for (int k = 0; k < layers - 1; k++) {
+                    int columns = layerSizes[k] + 1;
+                    if (layerWeights[k].length != layerSizes[k + 1]) {
+                        throw new IOException(fileName + " has " + layerWeights[k].length + " rows in layer " + k
+                                + ", expected " + layerSizes[k + 1]);
+                    }
+                    for (int i = 0; i < layerWeights[k].length; i++) {
+                        if (layerWeights[k][i].length != columns) {
+                            throw new IOException(fileName + " has " + layerWeights[k][i].length + " columns in layer " + k
+                                    + ", expected " + columns);
+                        }
+                        System.arraycopy(layerWeights[k][i], 0, imported, layerOffsets[k] + i * columns, columns);
                     }
-                    lineCount++;
-                    System.out.println("");
-                } else {
-                    lineCount = 0;
-                    layerCount += 1;
                 }
-                System.out.println("");
+                System.arraycopy(imported, 0, replaceableWeights(), 0, imported.length);
             }
-            fileReader.close();
-        } catch (FileNotFoundException e) {
+        } catch (FileNotFoundException | NoSuchFileException e) {
             System.out.println("Error: this file does not exist!");
             e.printStackTrace();
+        } catch (IOException e) {
+            System.out.println("Error: could not read the weights");
+            e.printStackTrace();
         }
     }
 }
\ No newline at end of file
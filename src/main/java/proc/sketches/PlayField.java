@@ -2,38 +2,49 @@ package proc.sketches;
 
 
 import processing.core.PApplet;
-import java.util.Random;                //for generation random numbers
 
 class PlayField {
-    PApplet sketch;
     NavCube cube;
     Player player1;
     Player player2;
-    NavPoint PowerUp;
+    NavPoint PowerUp;       //the power-up the players aim for, null when the cube was too full to place one
+    SensorCorpus recorder;  //when set, every input given to Player.think in updateAI is recorded
+    private int[] view;     //gather table of the field of view, see FieldOfView
+    private int viewFov;    //fov the gather table is for
+
+    PlayField(int radius, int navPointSize) {
+        cube = new NavCube(radius, navPointSize);
+        player1 = new Player();
+        player2 = new Player();
+    }
 
-    PlayField(PApplet sketch, int radius, int navPointSize) {
-        this.sketch = sketch;
-        cube = new NavCube(sketch, radius, navPointSize);
-        player1 = new Player(sketch);
-        player2 = new Player(sketch);
+    PlayField(int radius, int navPointSize, Player p1, Player p2) {
+        cube = new NavCube(radius, navPointSize);
+        player1 = p1;
+        player2 = p2;
     }
 
-    PlayField(PApplet sketch, int radius, int navPointSize, Player p1, Player p2) {
-        this.sketch = sketch;
-        cube = new NavCube(sketch, radius, navPointSize);
+    /**
+     * Puts two other players on this field, so the field can be used for another match.
+     * generate clears the board for the match
+     */
+    void setPlayers(Player p1, Player p2) {
         player1 = p1;
         player2 = p2;
     }
 
+    /**
+     * Seeds the random choices of the match, see NavCube.setSeed
+     */
+    void setSeed(long seed) {
+        cube.setSeed(seed);
+    }
+
     public void generate() {
-        cube.generateCube();
-        cube.connectNeighbours();
-        Random r = new Random();
+        cube.clear();
         int loc1 = (int) (Math.round((cube.faceLength * 0.5 * cube.faceLength)) - 1);
-        //int loc1 = r.nextInt(cube.getNavPoints().length);
         player1.setLocation(cube.getNavPoints()[loc1]);
         int loc2 = (int) (Math.round((cube.faceLength * cube.faceLength * 5) + (cube.faceLength * 0.5 * cube.faceLength)) - 1);
-        //int loc2 = r.nextInt(cube.getNavPoints().length);
         player2.setLocation(cube.getNavPoints()[loc2]);
 
         cube.addPlayer(player1.getLocation());
@@ -42,8 +53,8 @@ class PlayField {
         PowerUp = cube.insertPowerUp();
     }
 
-    public void show() {
-        cube.drawCube();
+    public void show(PApplet sketch) {
+        cube.drawCube(sketch);
     }
 
     public void updateAI() {
@@ -52,45 +63,75 @@ class PlayField {
         double[] surroundings1 = convertToNNInput(playerLocation1, player1.getDirection(), player1.getFOV());
         player1.think(surroundings1);
 
-        NavPoint newLocation1 = cube.getNeighbours()[playerLocation1.getIndex()][player1.getDirection()];
-        int newDirection1 = getNewDirection(playerLocation1, newLocation1, player1.getDirection());
-
         NavPoint playerLocation2 = player2.getLocation();
         double[] surroundings2 = convertToNNInput(playerLocation2, player2.getDirection(), player2.getFOV());
         player2.think(surroundings2);
 
-        NavPoint newLocation2 = cube.getNeighbours()[playerLocation2.getIndex()][player2.getDirection()];
-        int newDirection2 = getNewDirection(playerLocation2, newLocation2, player2.getDirection());
+        if (recorder != null) {
+            recorder.record(surroundings1);
+            recorder.record(surroundings2);
+        }
+        moveAI();
+    }
+
+    void setRecorder(SensorCorpus recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Gathers the surroundings of both players into the batch, so their brains can be
+     * evaluated together with the players of other fields. After the batch has run,
+     * moveAI completes the update.
+     * @param batch inference engine collecting the players that have to think this tick
+     */
+    void queueAI(BatchedInference batch) {
+        int offset1 = batch.add(player1);
+        writeNNInput(player1.getLocation(), player1.getDirection(), player1.getFOV(), batch.getInputs(), offset1);
+        int offset2 = batch.add(player2);
+        writeNNInput(player2.getLocation(), player2.getDirection(), player2.getFOV(), batch.getInputs(), offset2);
+    }
+
+    /**
+     * Moves both players in the direction they have decided on and handles collisions and power-ups
+     */
+    void moveAI() {
+        NavPoint playerLocation1 = player1.getLocation();
+        int step1 = cube.step(playerLocation1.index, player1.getDirection());
+        NavPoint newLocation1 = cube.navPoints[CubeTopology.stepTarget(step1)];
+        int newDirection1 = CubeTopology.stepDirection(step1);
+
+        NavPoint playerLocation2 = player2.getLocation();
+        int step2 = cube.step(playerLocation2.index, player2.getDirection());
+        NavPoint newLocation2 = cube.navPoints[CubeTopology.stepTarget(step2)];
+        int newDirection2 = CubeTopology.stepDirection(step2);
 
         //perform the movement
-        if (newLocation1.getOccupation() == Occupation.AITAIL || newLocation1.getOccupation() == Occupation.AIHEAD) {
+        if (cube.isBlocked(newLocation1.index)) {
             player1.kill();
         }
 
-        if (newLocation1.getOccupation() == Occupation.POWERUP) {
+        if (cube.hasPowerUp(newLocation1.index)) {
             player1.addPowerUp(true);
             PowerUp = cube.resetPowerUp();
         }
 
         if (player1.isAlive()) {
-            playerLocation1.setOccupation(Occupation.AITAIL);
-            newLocation1.setOccupation(Occupation.AIHEAD);
+            cube.moveHead(playerLocation1.index, newLocation1.index);
             player1.setLocation(newLocation1);
             player1.setDirection(newDirection1);
         }
 
-        if (newLocation2.getOccupation() == Occupation.AITAIL || newLocation2.getOccupation() == Occupation.AIHEAD) {
+        if (cube.isBlocked(newLocation2.index)) {
             player2.kill();
         }
 
-        if (newLocation2.getOccupation() == Occupation.POWERUP) {
+        if (cube.hasPowerUp(newLocation2.index)) {
             player2.addPowerUp(true);
             PowerUp = cube.resetPowerUp();
         }
 
         if (player2.isAlive()) {
-            playerLocation2.setOccupation(Occupation.AITAIL);
-            newLocation2.setOccupation(Occupation.AIHEAD);
+            cube.moveHead(playerLocation2.index, newLocation2.index);
             player2.setLocation(newLocation2);
             player2.setDirection(newDirection2);
         }
@@ -101,38 +142,35 @@ class PlayField {
      * within the field of vision.
      */
     private double[] convertToNNInput(NavPoint currentPoint, int direction, int fov) {
-        NavPoint[] cubeState = getSurroundings(currentPoint, direction, fov);
-        double[] inputValues = new double[cubeState.length + 1];
+        double[] inputValues = new double[(2 * fov + 1) * (2 * fov + 1) + 1];
+        writeNNInput(currentPoint, direction, fov, inputValues, 0);
+        //testValues(inputValues, fov);
+        return inputValues;
+    }
 
-        for (int i = 0; i < cubeState.length; i++) {
-            if (cubeState[i] == null) {
-                inputValues[i] = 1;
+    /**
+     * writes the occupation in terms of double values of the cubestate
+     * within the field of vision into the given array, starting at offset.
+     */
+    private void writeNNInput(NavPoint currentPoint, int direction, int fov, double[] inputValues, int offset) {
+        if (view == null || viewFov != fov) {
+            view = FieldOfView.table(cube.size, fov);
+            viewFov = fov;
+        }
+        int area = (2 * fov + 1) * (2 * fov + 1);
+        int from = (4 * currentPoint.index + direction) * area;
+        for (int i = 0; i < area; i++) {
+            int seen = view[from + i];
+            if (cube.isBlocked(seen)) {
+                //a head or tail of any player
+                inputValues[offset + i] = -1;
+            } else if (cube.hasPowerUp(seen)) {
+                inputValues[offset + i] = 1;
             } else {
-                switch (cubeState[i].getOccupation()) {
-                    case EMPTY:
-                        inputValues[i] = 0;
-                        break;
-                    case PLAYERTAIL:
-                        inputValues[i] = -1;
-                        break;
-                    case AITAIL:
-                        inputValues[i] = -1;
-                        break;
-                    case PLAYERHEAD:
-                        inputValues[i] = -1;
-                        break;
-                    case AIHEAD:
-                        inputValues[i] = -1;
-                        break;
-                    case POWERUP:
-                        inputValues[i] = 1;
-                        break;
-                }
+                inputValues[offset + i] = 0;
             }
         }
-        inputValues[cubeState.length] = currentPoint.getAngleTo(PowerUp, direction);
-        //testValues(inputValues, fov);
-        return inputValues;
+        inputValues[offset + area] = PowerUp == null ? 0 : currentPoint.getAngleTo(PowerUp, direction);
     }
 
     private void testValues(double[] inputValues, int fov) {
@@ -146,74 +184,29 @@ class PlayField {
         System.out.println();
     }
 
-    /**
-     * This method is VERY nice. Have you ever noticed that the direction should change when going over an
-     * edge of the cube? Well, that is where this method comes into place! Get your new, fresh direction here
-     * for the price of O(1)! Very nice indeed.
-     * For example: going from face 3 to 6, the direction changes from top(3) to bottom(1)
-     * @param p1 is the position you are going away from
-     * @param p2 is the position you are going towards
-     * @param direction is the direction you are heading now, needed for some cases
-     * @return the new direction if the two faces p1 and p2 are on, are different. The old direction if the two faces p1 and p2 are on, are similar.
-     */
-    public int getNewDirection(NavPoint p1, NavPoint p2, int direction) {
-        if (p1.face != p2.face) {
-            if (p1.face == 2) {
-                if (p2.face == 3 || p2.face == 4) {
-                    //direction changes in the logic from top(3) or bottom(1) to right(2)
-                    return 2;
-                }
-                return direction;
-            } else if (p1.face == 3) {
-                if (p2.face == 4 || p2.face == 1) {
-                    //direction does not change
-                    return direction;
-                } else {
-                    //else the direction always changes to bottom(1)
-                    return 1;
-                }
-            } else if (p1.face == 4) {
-                if (p2.face == 3 || p2.face == 1) {
-                    //direction does not change
-                    return direction;
-                } else {
-                    //else the direction always changes to top(3)
-                    return 3;
-                }
-            } else if (p1.face == 5) {
-                if (p2.face == 3 || p2.face == 4) {
-                    //direction changes in the logic from top(3) or bottom(1) to left(0)
-                    return 0;
-                }
-                return direction;
-            } else if (p1.face == 6) {
-                if (p2.face == 3) {
-                    return 1;
-                } else if (p2.face == 4) {
-                    return 3;
-                }
-                return direction;
-            }
-        }
-        return direction;
-    }
-
     /**
      * Method to generate the surroundings within the FOV around the AI's head
      * it generates in the following way:
      * first it analyses the axis 90 degrees from the direction where the AI is going
      * From there it looks to the neighbours above and below.
+     * The players read their surroundings from the gather tables of FieldOfView, which are built with this method
      */
     public NavPoint[] getSurroundings(NavPoint location, int direction, int FOV) {
+        return getSurroundings(cube.getNeighbours(), location, direction, FOV);
+    }
+
+    /**
+     * Walks the given neighbours to find the surroundings within the FOV, see getSurroundings
+     */
+    static NavPoint[] getSurroundings(NavPoint[][] neighbours, NavPoint location, int direction, int FOV) {
 
         NavPoint[][] surroundings = new NavPoint[2 * FOV + 1][2 * FOV + 1];
-        NavPoint[][] neighbours = cube.getNeighbours();
 
         NavPoint leftLocation = location;
         for (int i = 0; i < FOV; i++) {
             direction = (direction + 1) % 4;
             NavPoint newLocation = neighbours[leftLocation.getIndex()][direction];
-            direction = ((((getNewDirection(leftLocation, newLocation, direction) - 1) % 4) + 4) % 4);
+            direction = ((((CubeTopology.getNewDirection(leftLocation, newLocation, direction) - 1) % 4) + 4) % 4);
             leftLocation = newLocation;
         }
         int iIndex = 0;
@@ -229,7 +222,7 @@ class PlayField {
             //go up from the middle location
             for (int j = 0; j < FOV; j++) {
                 NavPoint newLocation = neighbours[yLocation.getIndex()][direction];
-                direction = getNewDirection(yLocation, newLocation, direction);
+                direction = CubeTopology.getNewDirection(yLocation, newLocation, direction);
                 yLocation = newLocation;
                 surroundings[jIndex][iIndex] = yLocation;
                 jIndex -= 1;
@@ -240,7 +233,7 @@ class PlayField {
             jIndex = FOV + 1;
             for (int j = 0; j < FOV; j++) {
                 NavPoint newLocation = neighbours[yLocation.getIndex()][direction];
-                direction = getNewDirection(yLocation, newLocation, direction);
+                direction = CubeTopology.getNewDirection(yLocation, newLocation, direction);
                 yLocation = newLocation;
                 surroundings[jIndex][iIndex] = yLocation;
                 jIndex += 1;
@@ -249,7 +242,7 @@ class PlayField {
             iIndex += 1;
             baseDirection = (((baseDirection - 1) % 4) + 4) % 4;
             NavPoint newLocation = neighbours[leftLocation.getIndex()][(baseDirection)];
-            direction = getNewDirection(leftLocation, newLocation, baseDirection);
+            direction = CubeTopology.getNewDirection(leftLocation, newLocation, baseDirection);
 
             //reset everything
             baseDirection = (direction + 1) % 4;
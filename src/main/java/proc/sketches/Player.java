@@ -1,9 +1,8 @@
 package proc.sketches;
 
-import processing.core.PApplet;
+import java.util.SplittableRandom;      //for generation random numbers
 
 public class Player {
-    private PApplet sketch;
     private int player;             //whether this player is player 1 or 2
     private boolean alive;          //If false, this player died (may be redundant, but who knows :) )
     private double speed;           //Speed of the player
@@ -18,6 +17,8 @@ public class Player {
     //and adding its effect in usePowerUp under case (length + 1)
 
     private NeuralNetwork brain;        //holds the neural network which makes decisions
+    private FrozenNetwork frozenBrain;  //quantized copy of the brain used by think when it is frozen
+    private double[] decision;          //buffer receiving the output of the brain every think
     private int fov;                    //distance the player can see (can see in a box of size fov around him)
     private int direction;              //direction the player is moving to
     //0 --> left, 1 --> up, 2 --> right, 3 --> down
@@ -35,8 +36,32 @@ public class Player {
      * AI is initially alive, controls are not inverted, and speed is normal
      * The player's starting location is found and no power-ups are applied yet
      */
-    public Player(PApplet sketch){
-        this.sketch = sketch;
+    public Player(){
+        this(2, null);
+    }
+
+    /**
+     * Constructs a AI character with a random brain for the given field of view
+     * @param fov distance the player can see
+     */
+    public Player(int fov){
+        this(fov, null);
+    }
+
+    /**
+     * Constructs a AI character with the given brain, the field of view follows from its number of inputs
+     * @param brain the neural network making the decisions
+     */
+    public Player(NeuralNetwork brain){
+        this(((int) Math.round(Math.sqrt(brain.input_nodes - 1)) - 1) / 2, brain);
+    }
+
+    /**
+     * Constructs a AI character with the given brain, without creating a random brain first
+     * @param fov distance the player can see
+     * @param brain the neural network making the decisions, a random one is created when null
+     */
+    public Player(int fov, NeuralNetwork brain){
         //Initialize vital values
         alive = true;
         speed = 1.0; //Subject to change
@@ -56,12 +81,42 @@ public class Player {
             powerUps[i] = false;
         }
         score = 1;
-        fov = 2;
-        brain = new NeuralNetwork(sketch, (fov * 2 + 1) * (fov * 2 + 1) + 1, new int[]{8,8}, 3);
+        this.fov = fov;
+        if (brain == null) {
+            brain = randomBrain(fov, RandomStreams.current());
+        }
+        this.brain = brain;
+        decision = new double[3];
         //String weightsFile = "PUWeights.txt";
         //brain.readWeights(weightsFile);
     }
 
+    /**
+     * returns a brain for the given field of view with random weights drawn from the given stream
+     */
+    static NeuralNetwork randomBrain(int fov, SplittableRandom random) {
+        return new NeuralNetwork((fov * 2 + 1) * (fov * 2 + 1) + 1, new int[]{8,8}, 3, random);
+    }
+
+    /**
+     * Puts the player back in the state of a new player (alive, no location, no power-ups, score 1)
+     * while keeping its brain, so players can be reused for the next generation
+     */
+    public void reset() {
+        alive = true;
+        speed = 1.0;
+        inverted = false;
+        currentPoint = null;
+        direction = 3;
+        hasPowerUp = false;
+        for (int i = 0; i < powerUps.length; i++){
+            powerUps[i] = false;
+        }
+        score = 1;
+        fitness = 0;
+        frozenBrain = null;
+    }
+
     public NavPoint getLocation() {
         return currentPoint;
     }
@@ -164,13 +219,28 @@ public class Player {
      * @param input array of double values containing the current cubestate
      */
     public void think(double[] input) {
-        double[] output = brain.feedForward(input);
+        double[] output = decision;
+        if (frozenBrain != null) {
+            frozenBrain.feedForward(input, output);
+        } else {
+            brain.feedForward(input, output);
+        }
+        decide(output, 0);
+    }
+
+    /**
+     * sets the new direction of the player based on the highest value in an output
+     * of the brain that was calculated elsewhere (see think for the meaning of the values)
+     * @param output array holding the output values of the brain
+     * @param offset index of the first output value in output
+     */
+    void decide(double[] output, int offset) {
         double maxValue = 0;
         int maxIndex = 0;
-        for (int i = 0; i < output.length; i++) {
-            if (output[i] > maxValue) {
+        for (int i = 0; i < 3; i++) {
+            if (output[offset + i] > maxValue) {
                 maxIndex = i;
-                maxValue = output[i];
+                maxValue = output[offset + i];
             }
         }
         switch (maxIndex) {
@@ -188,6 +258,7 @@ public class Player {
      */
     public void mutate(double mutationChance) {
         this.brain.mutate(mutationChance);
+        refreezeBrain();
     }
 
     /**
@@ -196,6 +267,7 @@ public class Player {
      */
     public void changeBrain(String fileWithNewBrain) {
         brain.readWeights(fileWithNewBrain);
+        refreezeBrain();
     }
 
     /**
@@ -205,20 +277,37 @@ public class Player {
      * @param parent2 second player to combine weights with
      */
     public Player haveSex(Player parent2) {
-        Player child = new Player(sketch);
-        NeuralNetwork childBrain = brain.crossOver(parent2.getBrain());
-        child.setBrain(childBrain);
-        return child;
+        NeuralNetwork childBrain = brain.crossOver(parent2.readBrain());
+        return new Player(fov, childBrain);
     }
 
     public int getScore() { return score; }
     public void addScore(int amount) { this.score += amount; }
+    void setScore(int score) { this.score = score; }
 
     public double getFitness() { return fitness; }
     public void setFitness(double fitness) { this.fitness = fitness; }
 
-    public NeuralNetwork getBrain() { return brain.copy(); }
-    public void setBrain(NeuralNetwork brain) { this.brain = brain; }
+    public NeuralNetwork getBrain() { return brain.copy(); }  //cheap, the weights are shared until changed
+    NeuralNetwork readBrain() { return brain; }     //the brain itself, only to be read
+    public void setBrain(NeuralNetwork brain) { this.brain = brain; frozenBrain = null; }
+
+    /**
+     * lets think use a quantized copy of the current brain, for players whose brain will not be trained anymore.
+     * Evolution (mutate, haveSex, getBrain) keeps working on the original brain, mutate and changeBrain
+     * freeze the changed brain again with the same precision
+     * @param precision float32 weights or int8 weights with a scale per row
+     */
+    public void freezeBrain(FrozenNetwork.Precision precision) { frozenBrain = brain.freeze(precision); }
+
+    /**
+     * replaces the frozen copy of the brain after the weights of the brain changed, so think does not use the old weights
+     */
+    private void refreezeBrain() {
+        if (frozenBrain != null) {
+            frozenBrain = brain.freeze(frozenBrain.getPrecision());
+        }
+    }
 
     public boolean isAlive() { return alive; }
     public void kill() { alive = false; }
@@ -0,0 +1,21 @@
+package proc.sketches;
+
+/**
+ * Plays the matches of a generation: player 2i against player 2i + 1 for every pair in the population.
+ * A match with the same players and the same seed always ends the same way, wherever it is played.
+ */
+interface PopulationEvaluator {
+
+    /**
+     * Plays all matches of the population, adds the scores to the players and kills the players that
+     * died in their match. A player that is still alive afterwards ran out of game time, SuccessiveHalving
+     * relies on that. Returns when every match has finished
+     * @param players the population, an odd last player does not play
+     * @param seeds seed of every match, see Seeds.matchSeeds
+     * @param radius radius of the cubes
+     * @param tileSize size of the tiles of the cubes
+     * @param maxGameTime maximal amount of turns of a match
+     * @param best receives the players with the highest scores, cleared first
+     */
+    void evaluate(Player[] players, long[] seeds, int radius, int tileSize, int maxGameTime, TopK best);
+}
@@ -0,0 +1,31 @@
+package proc.sketches;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random streams for random choices that are not part of a seeded run, like a brain created without
+ * a stream or the seed of a new run (a seeded run derives all its streams with Seeds). Every thread
+ * gets its own SplittableRandom, split from one root stream, so no thread has to wait for another to
+ * draw a number.
+ */
+final class RandomStreams {
+    //source of the random streams of all threads, only used while holding its lock
+    private static final SplittableRandom ROOT = new SplittableRandom();
+    private static final ThreadLocal<SplittableRandom> STREAM = ThreadLocal.withInitial(RandomStreams::split);
+
+    private RandomStreams() {
+    }
+
+    private static SplittableRandom split() {
+        synchronized (ROOT) {
+            return ROOT.split();
+        }
+    }
+
+    /**
+     * returns the random stream of the current thread
+     */
+    static SplittableRandom current() {
+        return STREAM.get();
+    }
+}
@@ -0,0 +1,37 @@
+package proc.sketches;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Linear rank selection: the chance of a player depends on its place in the population, not on how
+ * much fitter it is than the others. The least fit player has weight 1, the fittest weight n.
+ * The players are ordered once per generation, a pick inverts the cumulative weights in O(1).
+ */
+class RankSelection implements SelectionStrategy {
+    private long[] order;   //fitness (as float bits) in the high half and index in the low half, ascending
+    private int size;       //number of players in the population
+
+    @Override
+    public void prepare(Player[] players) {
+        size = players.length;
+        if (order == null || order.length != size) {
+            order = new long[size];
+        }
+        for (int i = 0; i < size; i++) {
+            //the bits of a non-negative float sort like the float itself
+            float fitness = (float) Math.max(0, players[i].getFitness());
+            order[i] = ((long) Float.floatToIntBits(fitness) << 32) | i;
+        }
+        Arrays.sort(order);
+    }
+
+    @Override
+    public int select(SplittableRandom random) {
+        //rank r (0 is the least fit) has weight r + 1, ranks 0 to r weigh (r + 1)(r + 2) / 2 together
+        double target = random.nextDouble() * size * (size + 1.0) / 2;
+        int rank = (int) ((Math.sqrt(8 * target + 1) - 1) / 2);
+        rank = Math.min(rank, size - 1);
+        return (int) order[rank];
+    }
+}
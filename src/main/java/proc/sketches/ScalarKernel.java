@@ -0,0 +1,28 @@
+package proc.sketches;
+
+/**
+ * Plain Java implementation of the dense layer. Every row is summed from the first to the last
+ * column, the same order Jama uses for Matrix.times
+ */
+class ScalarKernel implements DenseKernel {
+
+    @Override
+    public void dense(double[] w, int weightOffset, double[] in, int inOffset, int columns,
+                      double[] out, int outOffset, int rows) {
+        int index = weightOffset;
+        for (int i = 0; i < rows; i++) {
+            double sum = 0;
+            for (int j = 0; j < columns; j++) {
+                sum += w[index++] * in[inOffset + j];
+            }
+            out[outOffset + i] = sum;
+        }
+    }
+
+    @Override
+    public void sigmoid(double[] nodes, int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            nodes[i] = 1 /(1 + Math.exp(-1 * nodes[i]));
+        }
+    }
+}
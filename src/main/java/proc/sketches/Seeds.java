@@ -0,0 +1,53 @@
+package proc.sketches;
+
+/**
+ * Derives independent seeds from a seed and a number, like the seed of every match of a generation.
+ * Uses the finalizer of SplitMix64, so neighbouring numbers give unrelated seeds.
+ *
+ * Every random choice of a run derives from the seed of the run: per purpose, per generation, per
+ * island and per match. No stream depends on the thread that draws from it, so a run with the same
+ * seed gives the same results on any number of threads, and a run resumed from a checkpoint goes on
+ * exactly as it would have.
+ */
+final class Seeds {
+    //purposes of the streams derived from the seed of a run, streams of different purposes never overlap
+    static final long MATCHES = 0;      //seeds of the matches, one per generation
+    static final long OPERATORS = 1;    //selection, crossover and mutation, one stream per generation
+    static final long BRAINS = 2;       //weights of the first population
+    static final long ISLANDS = 3;      //seeds of the islands of an IslandModel, one per island
+    static final long MIGRATION = 4;    //destinations of the migrants of an island
+
+    private Seeds() {
+    }
+
+    /**
+     * returns the seed for the given number derived from the seed
+     */
+    static long mix(long seed, long number) {
+        long z = seed + (number + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * returns the seed of stream number of the given purpose, like the operator stream of generation 12
+     * @param seed seed of the run
+     * @param purpose what the stream is used for, one of the constants of this class
+     * @param number number of the stream within its purpose
+     */
+    static long derive(long seed, long purpose, long number) {
+        return mix(mix(seed, purpose), number);
+    }
+
+    /**
+     * returns the seeds of the matches of a generation, match i gets mix(seed, i)
+     */
+    static long[] matchSeeds(long seed, int matches) {
+        long[] seeds = new long[matches];
+        for (int i = 0; i < matches; i++) {
+            seeds[i] = mix(seed, i);
+        }
+        return seeds;
+    }
+}
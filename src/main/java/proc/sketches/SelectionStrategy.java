@@ -0,0 +1,50 @@
+package proc.sketches;
+
+import java.util.SplittableRandom;
+
+/**
+ * Picks the parents of the next generation. A strategy is prepared once per generation with the
+ * fitness of the population, after which every pick only returns the index of the chosen player.
+ */
+interface SelectionStrategy {
+
+    /**
+     * Builds the selection tables for a generation, must be called before select
+     * @param players the population after its fitness has been set
+     */
+    void prepare(Player[] players);
+
+    /**
+     * returns the index of a selected player of the population given to prepare
+     * @param random random stream to draw from
+     */
+    int select(SplittableRandom random);
+
+    /**
+     * Creates a strategy from its name, as given with -Dproc.selection: alias, cumulative, rank,
+     * tournament:<size> or truncation:<fraction>. Without a size a tournament has 2 players,
+     * without a fraction truncation selects the fittest half
+     */
+    static SelectionStrategy forName(String name) {
+        int colon = name.indexOf(':');
+        String kind = colon < 0 ? name : name.substring(0, colon);
+        String argument = colon < 0 ? null : name.substring(colon + 1);
+        if (argument != null && !kind.equals("tournament") && !kind.equals("truncation")) {
+            throw new IllegalArgumentException("Selection " + kind + " takes no argument");
+        }
+        switch (kind) {
+            case "alias":
+                return new AliasSelection();
+            case "cumulative":
+                return new CumulativeSelection();
+            case "rank":
+                return new RankSelection();
+            case "tournament":
+                return new TournamentSelection(argument == null ? 2 : Integer.parseInt(argument));
+            case "truncation":
+                return new TruncationSelection(argument == null ? 0.5 : Double.parseDouble(argument));
+            default:
+                throw new IllegalArgumentException("Unknown selection " + name);
+        }
+    }
+}
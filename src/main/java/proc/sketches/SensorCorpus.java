@@ -0,0 +1,59 @@
+package proc.sketches;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/**
+ * A recorded list of sensor inputs as they were given to Player.think during games.
+ * Used to check that changes to the networks do not change the decisions of the players.
+ */
+class SensorCorpus {
+    private ArrayList<double[]> inputs;
+
+    SensorCorpus() {
+        inputs = new ArrayList<double[]>();
+    }
+
+    /**
+     * adds a copy of the input to the corpus
+     */
+    void record(double[] input) {
+        inputs.add(input.clone());
+    }
+
+    int size() {
+        return inputs.size();
+    }
+
+    double[] get(int index) {
+        return inputs.get(index);
+    }
+
+    /**
+     * Records the inputs of both players for a number of games between random brains. The same seed
+     * always gives the same corpus
+     * @param games number of games to play
+     * @param radius radius of the cube the games are played on
+     * @param maxGameTime maximal number of turns of a game
+     * @param seed seed of the brains and of the games
+     */
+    static SensorCorpus play(int games, int radius, int maxGameTime, long seed) {
+        SensorCorpus corpus = new SensorCorpus();
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < games; i++) {
+            Player player1 = new Player(2, Player.randomBrain(2, random));
+            Player player2 = new Player(2, Player.randomBrain(2, random));
+            PlayField playField = new PlayField(radius, 20, player1, player2);
+            playField.setSeed(Seeds.mix(seed, i));
+            playField.generate();
+            playField.setRecorder(corpus);
+            for (int time = 0; time < maxGameTime; time++) {
+                playField.updateAI();
+                if (!(playField.player1.isAlive() || playField.player2.isAlive())) {
+                    break;
+                }
+            }
+        }
+        return corpus;
+    }
+}
@@ -0,0 +1,114 @@
+package proc.sketches;
+
+/**
+ * Racing with successive halving: instead of giving every match the full game time, all players first
+ * play short matches. Only the best part of them goes on to the next round, where they play longer
+ * matches against players of about the same strength, until the last round plays the full game time.
+ * Most of the game time is spent on the players that have a chance to become parents.
+ *
+ * The score of a round is extrapolated to the full game time: a player that died keeps its score, a
+ * player that was still alive is assumed to keep scoring at the same rate. A player's score is the
+ * average of its extrapolated scores, weighted by the game time of the rounds, so the players that get
+ * further are measured more often and more precisely. Players that dropped out still get a fitness,
+ * so every selection strategy keeps working.
+ */
+class SuccessiveHalving {
+    private double[] budgets;   //game time of every round as a fraction of the full game time
+    private double keep;        //part of the players that goes on to the next round
+
+    /**
+     * The default schedule: rounds of 1/8, 1/4, 1/2 and the full game time, keeping the better half
+     */
+    SuccessiveHalving() {
+        this(new double[]{0.125, 0.25, 0.5, 1}, 0.5);
+    }
+
+    /**
+     * @param budgets game time of every round as a fraction of the full game time, increasing
+     * @param keep part of the players that goes on to the next round, in (0, 1]
+     */
+    SuccessiveHalving(double[] budgets, double keep) {
+        if (budgets.length == 0 || !(keep > 0 && keep <= 1)) {
+            throw new IllegalArgumentException("A schedule needs at least one round and a kept part in (0, 1]");
+        }
+        for (int r = 0; r < budgets.length; r++) {
+            if (!(budgets[r] > 0 && budgets[r] <= 1) || (r > 0 && budgets[r] < budgets[r - 1])) {
+                throw new IllegalArgumentException("The budgets must increase and lie in (0, 1]");
+            }
+        }
+        this.budgets = budgets.clone();
+        this.keep = keep;
+    }
+
+    /**
+     * Plays the rounds like PopulationEvaluator.evaluate and sets the extrapolated score of every player
+     * @param evaluator plays the matches of every round
+     * @param seeds seeds of the matches of the generation, the rounds derive their seeds from them
+     */
+    void evaluate(PopulationEvaluator evaluator, Player[] players, long[] seeds, int radius, int tileSize,
+                  int maxGameTime, TopK best) {
+        int n = 2 * (players.length / 2);
+        double[] estimates = new double[players.length];    //weighted average of the extrapolated scores
+        double[] weights = new double[players.length];      //sum of the game time the average is over
+        for (int i = 0; i < players.length; i++) {
+            estimates[i] = players[i].getScore();
+        }
+        //indices of the players in this round, paired as 2j against 2j + 1
+        int[] racing = new int[n];
+        for (int i = 0; i < n; i++) {
+            racing[i] = i;
+        }
+        for (int r = 0; r < budgets.length && racing.length >= 2; r++) {
+            int budget = Math.max(1, (int) Math.round(budgets[r] * maxGameTime));
+            int matches = racing.length / 2;
+            Player[] round = new Player[racing.length];
+            long[] roundSeeds = new long[matches];
+            for (int j = 0; j < racing.length; j++) {
+                round[j] = players[racing[j]];
+                if (r > 0) {
+                    round[j].reset();
+                }
+            }
+            for (int j = 0; j < matches; j++) {
+                roundSeeds[j] = r == 0 ? seeds[j] : Seeds.mix(seeds[j % seeds.length], r);
+            }
+            evaluator.evaluate(round, roundSeeds, radius, tileSize, budget, new TopK(1));
+
+            for (int index : racing) {
+                double score = extrapolate(players[index], budget, maxGameTime);
+                weights[index] += budget;
+                estimates[index] += (score - estimates[index]) * budget / weights[index];
+            }
+            //the best part, ordered best first in O(k log k), so neighbours of similar strength meet in the next round
+            int survivors = 2 * Math.max(1, (int) Math.round(keep * racing.length / 2));
+            if (r == budgets.length - 1 || survivors > racing.length) {
+                break;
+            }
+            TopK next = new TopK(survivors);
+            for (int index : racing) {
+                next.offer(index, estimates[index]);
+            }
+            racing = next.best();
+        }
+
+        best.clear();
+        for (int i = 0; i < players.length; i++) {
+            int score = (int) Math.round(estimates[i]);
+            players[i].setScore(score);
+            best.offer(i, score);
+        }
+    }
+
+    /**
+     * returns the score of a player after a match of the given game time, extrapolated to the full game time.
+     * Relies on the evaluator killing the players that died, see PopulationEvaluator.evaluate
+     */
+    static double extrapolate(Player player, int budget, int maxGameTime) {
+        //the first point of the score is not earned in the match
+        double earned = player.getScore() - 1;
+        if (!player.isAlive() || budget >= maxGameTime) {
+            return player.getScore();
+        }
+        return 1 + earned * maxGameTime / budget;
+    }
+}
@@ -0,0 +1,138 @@
+package proc.sketches;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the k best players seen so far in a bounded min-heap: the worst of the kept players is at
+ * the root, so a new player only has to be compared with the root and costs O(log k) when it gets in.
+ * Players are ordered by their key, on equal keys the lower index wins, so the result does not
+ * depend on the order in which the players were offered.
+ */
+class TopK {
+    private int[] indices;  //heap of the indices of the kept players
+    private double[] keys;  //keys of the kept players, in heap order
+    private int size;       //number of kept players
+
+    /**
+     * @param capacity number of players to keep
+     */
+    TopK(int capacity) {
+        indices = new int[capacity];
+        keys = new double[capacity];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return indices.length;
+    }
+
+    /**
+     * offers a player, it is kept when it is better than the worst kept player
+     * @param index index of the player in the population
+     * @param key score or fitness of the player, higher is better
+     */
+    void offer(int index, double key) {
+        if (size < indices.length) {
+            int i = size++;
+            //sift up
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!worse(index, key, indices[parent], keys[parent])) {
+                    break;
+                }
+                indices[i] = indices[parent];
+                keys[i] = keys[parent];
+                i = parent;
+            }
+            indices[i] = index;
+            keys[i] = key;
+        } else if (size > 0 && worse(indices[0], keys[0], index, key)) {
+            //replace the root
+            siftDown(indices, keys, size, index, key);
+        }
+    }
+
+    /**
+     * puts a player at the root of a heap of the given size and moves it down to its place
+     */
+    private static void siftDown(int[] indices, double[] keys, int size, int index, double key) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && worse(indices[child + 1], keys[child + 1], indices[child], keys[child])) {
+                child++;
+            }
+            if (!worse(indices[child], keys[child], index, key)) {
+                break;
+            }
+            indices[i] = indices[child];
+            keys[i] = keys[child];
+            i = child;
+        }
+        indices[i] = index;
+        keys[i] = key;
+    }
+
+    /**
+     * offers all players kept by another TopK
+     */
+    void addAll(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.indices[i], other.keys[i]);
+        }
+    }
+
+    /**
+     * returns the indices of the kept players, best first. The heap is popped on a copy, which takes
+     * O(k log k) and leaves this TopK unchanged
+     */
+    int[] best() {
+        int[] order = indices.clone();
+        double[] orderKeys = keys.clone();
+        //the worst remaining player is at the root, it goes to the end of the part that is still a heap
+        for (int end = size - 1; end > 0; end--) {
+            int index = order[0];
+            double key = orderKeys[0];
+            siftDown(order, orderKeys, end, order[end], orderKeys[end]);
+            order[end] = index;
+            orderKeys[end] = key;
+        }
+        return order.length == size ? order : Arrays.copyOf(order, size);
+    }
+
+    /**
+     * returns the indices of the kept players in no particular order, for callers that only need the set
+     */
+    int[] members() {
+        return Arrays.copyOf(indices, size);
+    }
+
+    /**
+     * returns the key of the best kept player
+     * @throws IllegalStateException when no player is kept
+     */
+    double bestKey() {
+        if (size == 0) {
+            throw new IllegalStateException("No player is kept");
+        }
+        double best = keys[0];
+        for (int i = 1; i < size; i++) {
+            best = Math.max(best, keys[i]);
+        }
+        return best;
+    }
+
+    private static boolean worse(int index1, double key1, int index2, double key2) {
+        return key1 < key2 || (key1 == key2 && index1 > index2);
+    }
+}
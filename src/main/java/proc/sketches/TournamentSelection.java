@@ -0,0 +1,39 @@
+package proc.sketches;
+
+import java.util.SplittableRandom;
+
+/**
+ * Tournament selection: picks a few random players and returns the fittest of them.
+ * Needs no tables, larger tournaments give more selection pressure.
+ */
+class TournamentSelection implements SelectionStrategy {
+    private int tournamentSize;     //number of players competing in a tournament
+    private Player[] players;       //the population given to prepare
+
+    /**
+     * @param tournamentSize number of players competing in a tournament, at least 1
+     */
+    TournamentSelection(int tournamentSize) {
+        if (tournamentSize < 1) {
+            throw new IllegalArgumentException("A tournament needs at least one player");
+        }
+        this.tournamentSize = tournamentSize;
+    }
+
+    @Override
+    public void prepare(Player[] players) {
+        this.players = players;
+    }
+
+    @Override
+    public int select(SplittableRandom random) {
+        int best = random.nextInt(players.length);
+        for (int i = 1; i < tournamentSize; i++) {
+            int contender = random.nextInt(players.length);
+            if (players[contender].getFitness() > players[best].getFitness()) {
+                best = contender;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,38 @@
+package proc.sketches;
+
+import java.util.SplittableRandom;
+
+/**
+ * Truncation selection: only the fittest part of the population gets children, every player of that
+ * part with the same chance. The fittest players are found in one pass with a TopK.
+ */
+class TruncationSelection implements SelectionStrategy {
+    private double fraction;    //part of the population that is selected
+    private int[] selected;     //indices of the selected players
+
+    /**
+     * @param fraction part of the population that is selected, in (0, 1]
+     */
+    TruncationSelection(double fraction) {
+        if (!(fraction > 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("The selected fraction must be in (0, 1]");
+        }
+        this.fraction = fraction;
+    }
+
+    @Override
+    public void prepare(Player[] players) {
+        int count = Math.max(1, (int) Math.ceil(fraction * players.length));
+        TopK top = new TopK(count);
+        for (int i = 0; i < players.length; i++) {
+            top.offer(i, players[i].getFitness());
+        }
+        //every selected player has the same chance, so their order does not matter
+        selected = top.members();
+    }
+
+    @Override
+    public int select(SplittableRandom random) {
+        return selected[random.nextInt(selected.length)];
+    }
+}
@@ -0,0 +1,142 @@
+package proc.sketches;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary protocol between a DistributedEvaluator (coordinator) and its EvaluationWorkers.
+ * All values are big-endian, as written by DataOutputStream.
+ *
+ * The worker starts with a hello:
+ *   int    magic "AIVW"
+ *   int    version (3)
+ *   UTF    name of the kernel class of the worker, the coordinator only accepts workers with its own kernel
+ *          because the SIMD kernel can round differently from the scalar one
+ *
+ * The coordinator then sends messages starting with a type byte. A batch of matches:
+ *   byte   BATCH
+ *   int    batch id
+ *   int    radius, tile size and maximal game time of the matches
+ *   UTF    name of the Activation mode of the networks
+ *   int    number of layers n of the networks
+ *   int[n] number of nodes per layer (without bias nodes)
+ *   int    number of matches m
+ *   m times: long seed of the match, double[] weights of player 1, double[] weights of player 2
+ *            (in the flat layout of NeuralNetwork, the length follows from the layer sizes)
+ * to which the worker answers with the results:
+ *   int    batch id
+ *   int    number of players 2m
+ *   2m times: int final score, boolean whether the player was still alive at the end of its match,
+ *            in the order of the batch
+ *
+ * BYE, or the coordinator closing the connection, ends the worker.
+ */
+final class WorkerProtocol {
+    static final int MAGIC = 'A' << 24 | 'I' << 16 | 'V' << 8 | 'W';
+    static final int VERSION = 3;
+
+    static final int BYE = 0;
+    static final int BATCH = 1;
+
+    private WorkerProtocol() {
+    }
+
+    static void writeHello(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(kernelName());
+        out.flush();
+    }
+
+    static void readHello(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an evaluation worker");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported worker protocol version " + version);
+        }
+        String kernel = in.readUTF();
+        if (!kernel.equals(kernelName())) {
+            throw new IOException("The worker uses kernel " + kernel + ", the coordinator " + kernelName());
+        }
+    }
+
+    /**
+     * returns the name of the kernel the networks of this JVM use, see DenseKernel.select
+     */
+    static String kernelName() {
+        return NeuralNetwork.KERNEL.getClass().getName();
+    }
+
+    /**
+     * Sends the matches with indices [from, to) of a population
+     */
+    static void writeBatch(DataOutputStream out, int id, int radius, int tileSize, int maxGameTime,
+                           Player[] players, long[] seeds, int from, int to) throws IOException {
+        NeuralNetwork brain = players[2 * from].readBrain();
+        int[] layerSizes = brain.layerSizes;
+        out.writeByte(BATCH);
+        out.writeInt(id);
+        out.writeInt(radius);
+        out.writeInt(tileSize);
+        out.writeInt(maxGameTime);
+        out.writeUTF(brain.getActivation().name());
+        out.writeInt(layerSizes.length);
+        for (int size : layerSizes) {
+            out.writeInt(size);
+        }
+        out.writeInt(to - from);
+        for (int match = from; match < to; match++) {
+            out.writeLong(seeds[match]);
+            writeWeights(out, players[2 * match].readBrain().weightData());
+            writeWeights(out, players[2 * match + 1].readBrain().weightData());
+        }
+        out.flush();
+    }
+
+    private static void writeWeights(DataOutputStream out, double[] weights) throws IOException {
+        for (double weight : weights) {
+            out.writeDouble(weight);
+        }
+    }
+
+    static void readWeights(DataInputStream in, double[] weights) throws IOException {
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = in.readDouble();
+        }
+    }
+
+    static void writeScores(DataOutputStream out, int id, Player[] players, int count) throws IOException {
+        out.writeInt(id);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeInt(players[i].getScore());
+            out.writeBoolean(players[i].isAlive());
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads the results of a batch
+     * @param id id of the batch that was sent
+     * @param count number of players in the batch
+     * @param alive receives whether every player of the batch was still alive at the end of its match
+     * @return the score of every player of the batch
+     */
+    static int[] readScores(DataInputStream in, int id, int count, boolean[] alive) throws IOException {
+        int receivedId = in.readInt();
+        int receivedCount = in.readInt();
+        if (receivedId != id || receivedCount != count) {
+            throw new IOException("Expected " + count + " scores of batch " + id + ", got " + receivedCount
+                    + " scores of batch " + receivedId);
+        }
+        int[] scores = new int[count];
+        for (int i = 0; i < count; i++) {
+            scores[i] = in.readInt();
+            alive[i] = in.readBoolean();
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,58 @@
+package proc.sketches;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ActivationTest {
+    //largest part of the decisions an approximated sigmoid may change
+    private static final double MAX_CHANGED_DECISIONS = 0.001;
+
+    private static SensorCorpus corpus;
+
+    @BeforeClass
+    public static void recordCorpus() {
+        corpus = Decisions.corpus();
+    }
+
+    @Test
+    public void staysWithinTheStatedError() {
+        //every 1/1024 over [-40, 40], beyond the table and the clamped range of the Pade approximant
+        double[] xs = new double[80 * 1024 + 1 + 4];
+        for (int i = 0; i < 80 * 1024 + 1; i++) {
+            xs[i] = -40 + i / 1024.0;
+        }
+        xs[xs.length - 4] = -1e6;
+        xs[xs.length - 3] = 1e6;
+        xs[xs.length - 2] = Double.MIN_VALUE;
+        xs[xs.length - 1] = -Double.MIN_VALUE;
+        for (Activation mode : Activation.values()) {
+            double[] nodes = xs.clone();
+            mode.apply(nodes, 0, nodes.length);
+            for (int i = 0; i < xs.length; i++) {
+                double exact = 1 / (1 + Math.exp(-xs[i]));
+                assertTrue(mode + " at " + xs[i] + ": " + nodes[i] + " instead of " + exact,
+                        Math.abs(nodes[i] - exact) <= mode.maxError());
+            }
+        }
+    }
+
+    @Test
+    public void approximationsKeepTheDecisions() {
+        NeuralNetwork[] brains = Decisions.brains();
+        for (Activation mode : Activation.values()) {
+            int differences = 0;
+            for (NeuralNetwork brain : brains) {
+                Player exact = new Player(brain.copy());
+                exact.readBrain().setActivation(Activation.EXACT);
+                Player approximate = new Player(brain.copy());
+                approximate.readBrain().setActivation(mode);
+                differences += Decisions.changed(exact, approximate, corpus);
+            }
+            long decisions = (long) brains.length * corpus.size();
+            assertTrue(mode + " changed " + differences + " of " + decisions + " decisions",
+                    differences <= MAX_CHANGED_DECISIONS * decisions);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package proc.sketches;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Checks that the batched evaluation takes the same decisions as Player.think
+ */
+public class BatchedInferenceTest {
+
+    @Test
+    public void decidesLikeThink() {
+        SensorCorpus corpus = Decisions.corpus();
+        NeuralNetwork[] brains = Decisions.brains();
+        NeuralNetwork first = brains[0];
+        BatchedInference batch = new BatchedInference(first.input_nodes, first.hidden_nodes, first.output_nodes, 8);
+        Player[] batched = new Player[brains.length];
+        Player[] reference = new Player[brains.length];
+        for (int b = 0; b < brains.length; b++) {
+            batched[b] = new Player(2, brains[b]);
+            reference[b] = new Player(2, brains[b]);
+        }
+        for (int i = 0; i < corpus.size(); i++) {
+            double[] input = corpus.get(i);
+            for (int b = 0; b < brains.length; b++) {
+                batched[b].setDirection(0);
+                int offset = batch.add(batched[b]);
+                System.arraycopy(input, 0, batch.getInputs(), offset, input.length);
+            }
+            batch.run();
+            assertEquals(0, batch.size());
+            for (int b = 0; b < brains.length; b++) {
+                reference[b].setDirection(0);
+                reference[b].think(input);
+                assertEquals("input " + i + ", brain " + b, reference[b].getDirection(), batched[b].getDirection());
+            }
+        }
+    }
+}
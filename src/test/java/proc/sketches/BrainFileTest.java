@@ -0,0 +1,86 @@
+package proc.sketches;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.SplittableRandom;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Reads weights back from the binary format and from the old text format, and checks that a file
+ * that can not be read leaves the weights of the network as they were
+ */
+public class BrainFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    //a 2-3-2 network: a layer of 3 rows of 3 weights and a layer of 2 rows of 4 weights
+    private static NeuralNetwork network(long seed) {
+        return new NeuralNetwork(2, new int[]{3}, 2, new SplittableRandom(seed));
+    }
+
+    private String write(String name, String... lines) throws IOException {
+        File file = folder.newFile(name);
+        PrintWriter writer = new PrintWriter(file);
+        try {
+            for (String line : lines) {
+                writer.println(line);
+            }
+        } finally {
+            writer.close();
+        }
+        return file.getPath();
+    }
+
+    @Test
+    public void binaryRoundTrip() throws IOException {
+        NeuralNetwork saved = network(1);
+        String fileName = new File(folder.getRoot(), "brain.bin").getPath();
+        saved.saveWeights(fileName);
+        NeuralNetwork loaded = network(2);
+        loaded.readWeights(fileName);
+        assertArrayEquals(saved.weightData(), loaded.weightData(), 0);
+    }
+
+    @Test
+    public void textImport() throws IOException {
+        String fileName = write("weights.txt",
+                "1 2 3", "4 5 6", "7 8 9", "",
+                "10 11 12 13", "14 15 16 17", "");
+        NeuralNetwork network = network(1);
+        network.readWeights(fileName);
+        double[] expected = new double[17];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = i + 1;
+        }
+        assertArrayEquals(expected, network.weightData(), 0);
+    }
+
+    @Test
+    public void wrongShapeLeavesWeightsUnchanged() throws IOException {
+        //the first layer is fine, the second has a row that is too short
+        String fileName = write("weights.txt",
+                "1 2 3", "4 5 6", "7 8 9", "",
+                "10 11 12 13", "14 15 16", "");
+        NeuralNetwork network = network(1);
+        double[] before = network.weightData().clone();
+        network.readWeights(fileName);
+        assertArrayEquals(before, network.weightData(), 0);
+    }
+
+    @Test
+    public void unreadableValueLeavesWeightsUnchanged() throws IOException {
+        String fileName = write("weights.txt",
+                "1 2 3", "4 5 6", "7 8 9", "",
+                "10 11 12 13", "14 15 x 17", "");
+        NeuralNetwork network = network(1);
+        double[] before = network.weightData().clone();
+        network.readWeights(fileName);
+        assertArrayEquals(before, network.weightData(), 0);
+    }
+}
@@ -0,0 +1,72 @@
+package proc.sketches;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writes checkpoints of a small population and checks that resuming gives back the same population
+ */
+public class CheckpointTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private void resumesTheSamePopulation(boolean delta) throws IOException, InterruptedException {
+        String prefix = new File(folder.getRoot(), "run").getPath();
+        Checkpoint checkpoint = new Checkpoint(prefix, 1, delta, 10);
+        Genetics genetics = new Genetics(20, 3, 20, 2, 5);
+        genetics.setExecutor(null);
+        int[] lastScores = null;
+        for (int i = 0; i < 3; i++) {
+            genetics.evolve();
+            checkpoint.offer(genetics);
+            lastScores = genetics.getLastScores();
+        }
+        checkpoint.close();
+
+        Genetics resumed = Checkpoint.resume(Checkpoint.latest(prefix));
+        assertEquals(genetics.getGeneration(), resumed.getGeneration());
+        assertEquals(genetics.getHighScore(), resumed.getHighScore());
+        assertEquals(genetics.getScore(), resumed.getScore(), 0);
+        assertArrayEquals(lastScores, resumed.getLastScores());
+        NeuralNetwork[] brains = genetics.getBrains();
+        NeuralNetwork[] resumedBrains = resumed.getBrains();
+        assertEquals(brains.length, resumedBrains.length);
+        for (int i = 0; i < brains.length; i++) {
+            assertArrayEquals(brains[i].weightData(), resumedBrains[i].weightData(), 0);
+        }
+    }
+
+    @Test
+    public void resumeFromCompleteCheckpoint() throws IOException, InterruptedException {
+        resumesTheSamePopulation(false);
+    }
+
+    @Test
+    public void resumeFromDeltaCheckpoint() throws IOException, InterruptedException {
+        resumesTheSamePopulation(true);
+    }
+
+    @Test
+    public void lastScoresAreNotAllZero() throws IOException, InterruptedException {
+        String prefix = new File(folder.getRoot(), "scores").getPath();
+        Checkpoint checkpoint = new Checkpoint(prefix, 1, false, 10);
+        Genetics genetics = new Genetics(20, 3, 20, 2, 5);
+        genetics.setExecutor(null);
+        genetics.evolve();
+        checkpoint.offer(genetics);
+        checkpoint.close();
+        int total = 0;
+        for (int score : Checkpoint.resume(Checkpoint.latest(prefix)).getLastScores()) {
+            total += score;
+        }
+        assertTrue(total > 0);
+    }
+}
@@ -0,0 +1,118 @@
+package proc.sketches;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import org.junit.Test;
+
+/**
+ * Checks the packed transition table against the geometry of a cube instead of against the code that
+ * builds it: the steps over the seams of the smallest cube are worked out by hand from the layout of the
+ * faces, and on every cube up to -Dproc.topology.maxRadius (10 by default) walking straight ahead must go
+ * around the cube and every step must be reversible.
+ */
+public class CubeTopologyTest {
+    private static final int MAX_RADIUS = Integer.getInteger("proc.topology.maxRadius", 10);
+
+    /*  The faces of the radius 1 cube, numbered row by row from the top left of every face:
+                 | 3: 18-26 |
+        | 2: 9-17 | 1: 0-8   | 5: 36-44 | 6: 45-53 |
+                 | 4: 27-35 |
+        Directions: 0 left, 1 bottom, 2 right, 3 top */
+
+    private static void assertStep(CubeTopology cube, int from, int direction, int to, int heading) {
+        int step = cube.transitions[4 * from + direction];
+        assertEquals("target of the step from " + from + " in direction " + direction, to, CubeTopology.stepTarget(step));
+        assertEquals("heading after the step from " + from + " in direction " + direction, heading, CubeTopology.stepDirection(step));
+    }
+
+    @Test
+    public void stepsWithinAFace() {
+        CubeTopology cube = CubeTopology.of(1, 1);
+        assertStep(cube, 4, 0, 3, 0);
+        assertStep(cube, 4, 1, 7, 1);
+        assertStep(cube, 4, 2, 5, 2);
+        assertStep(cube, 4, 3, 1, 3);
+    }
+
+    @Test
+    public void stepsOverTheSeams() {
+        CubeTopology cube = CubeTopology.of(1, 1);
+        //front to left and front to top, the heading does not change
+        assertStep(cube, 0, 0, 11, 0);
+        assertStep(cube, 0, 3, 24, 3);
+        //over the top of the top face onto the back face: corner 3-2-6 to corner 6-2-3, heading down
+        assertStep(cube, 18, 3, 47, 1);
+        //up from the left face onto the left column of the top face, heading right
+        assertStep(cube, 9, 3, 18, 2);
+        assertStep(cube, 11, 3, 24, 2);
+        //up from the right face onto the right column of the top face, heading left
+        assertStep(cube, 36, 3, 26, 0);
+        assertStep(cube, 38, 3, 20, 0);
+        //down from the back face onto the bottom row of the bottom face, heading up
+        assertStep(cube, 51, 1, 35, 3);
+        //left from the bottom face onto the bottom row of the left face, heading up
+        assertStep(cube, 27, 0, 17, 3);
+    }
+
+    @Test
+    public void walkingStraightGoesAroundTheCube() {
+        for (int radius = 1; radius <= MAX_RADIUS; radius++) {
+            CubeTopology cube = CubeTopology.of(radius, 1);
+            int around = 4 * cube.faceLength;
+            for (int start = 0; start < cube.navPoints.length; start++) {
+                for (int direction = 0; direction < 4; direction++) {
+                    HashSet<Integer> visited = new HashSet<Integer>();
+                    int index = start;
+                    int heading = direction;
+                    for (int s = 0; s < around; s++) {
+                        assertTrue("radius " + radius + ": the walk from " + start + " in direction " + direction
+                                + " crosses itself", visited.add(index));
+                        int step = cube.transitions[4 * index + heading];
+                        index = CubeTopology.stepTarget(step);
+                        heading = CubeTopology.stepDirection(step);
+                    }
+                    assertEquals("radius " + radius + ": the walk from " + start + " ends elsewhere", start, index);
+                    assertEquals("radius " + radius + ": the walk from " + start + " ends turned", direction, heading);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void everyStepCanBeWalkedBack() {
+        for (int radius = 1; radius <= MAX_RADIUS; radius++) {
+            CubeTopology cube = CubeTopology.of(radius, 1);
+            for (int index = 0; index < cube.navPoints.length; index++) {
+                HashSet<Integer> neighbours = new HashSet<Integer>();
+                for (int direction = 0; direction < 4; direction++) {
+                    int step = cube.transitions[4 * index + direction];
+                    int target = CubeTopology.stepTarget(step);
+                    assertFalse("radius " + radius + ": " + index + " is its own neighbour", target == index);
+                    neighbours.add(target);
+                    int back = cube.transitions[4 * target + (CubeTopology.stepDirection(step) + 2) % 4];
+                    assertEquals("radius " + radius + ": back from " + target, index, CubeTopology.stepTarget(back));
+                    assertEquals("radius " + radius + ": heading back to " + index, (direction + 2) % 4,
+                            CubeTopology.stepDirection(back));
+                }
+                assertEquals("radius " + radius + ": neighbours of " + index, 4, neighbours.size());
+            }
+        }
+    }
+
+    @Test
+    public void tableMatchesTheNeighbours() {
+        for (int radius = 1; radius <= MAX_RADIUS; radius++) {
+            CubeTopology cube = CubeTopology.of(radius, 1);
+            for (int index = 0; index < cube.navPoints.length; index++) {
+                for (int direction = 0; direction < 4; direction++) {
+                    NavPoint neighbour = cube.neighbours[index][direction];
+                    assertStep(cube, index, direction, neighbour.index,
+                            CubeTopology.getNewDirection(cube.navPoints[index], neighbour, direction));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package proc.sketches;
+
+import java.util.SplittableRandom;
+
+/**
+ * Compares the decisions of two players on a corpus of recorded sensor inputs
+ */
+final class Decisions {
+    static final long CORPUS_SEED = 42;
+
+    private Decisions() {
+    }
+
+    /**
+     * returns the corpus the decision tests run on: the inputs of 200 games between random brains
+     */
+    static SensorCorpus corpus() {
+        return SensorCorpus.play(200, 5, 1000, CORPUS_SEED);
+    }
+
+    /**
+     * returns 20 random brains, the same ones every time
+     */
+    static NeuralNetwork[] brains() {
+        SplittableRandom random = new SplittableRandom(7);
+        NeuralNetwork[] brains = new NeuralNetwork[20];
+        for (int i = 0; i < brains.length; i++) {
+            brains[i] = Player.randomBrain(2, random);
+        }
+        return brains;
+    }
+
+    /**
+     * Lets both players think about every input of the corpus, starting from the same
+     * direction, and returns the number of inputs on which they chose a different direction
+     */
+    static int changed(Player reference, Player candidate, SensorCorpus corpus) {
+        int differences = 0;
+        for (int i = 0; i < corpus.size(); i++) {
+            reference.setDirection(0);
+            candidate.setDirection(0);
+            reference.think(corpus.get(i));
+            candidate.think(corpus.get(i));
+            if (reference.getDirection() != candidate.getDirection()) {
+                differences++;
+            }
+        }
+        return differences;
+    }
+}
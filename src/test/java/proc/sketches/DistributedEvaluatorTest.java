@@ -0,0 +1,150 @@
+package proc.sketches;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+/**
+ * Plays generations on a coordinator with workers that misbehave, the results must be those of local matches
+ */
+public class DistributedEvaluatorTest {
+    private static final int RADIUS = 4;
+    private static final int TILE_SIZE = 20;
+    private static final int MAX_GAME_TIME = 1000;
+
+    private static Player[] players(int count) {
+        SplittableRandom random = new SplittableRandom(13);
+        Player[] players = new Player[count];
+        for (int i = 0; i < count; i++) {
+            players[i] = new Player(2, Player.randomBrain(2, random));
+        }
+        return players;
+    }
+
+    private static int[] play(PopulationEvaluator evaluator, Player[] players) {
+        for (Player player : players) {
+            player.reset();
+        }
+        long[] seeds = Seeds.matchSeeds(9, players.length / 2);
+        evaluator.evaluate(players, seeds, RADIUS, TILE_SIZE, MAX_GAME_TIME, new TopK(2));
+        int[] scores = new int[players.length];
+        for (int i = 0; i < players.length; i++) {
+            scores[i] = players[i].getScore();
+        }
+        return scores;
+    }
+
+    private static void waitForWorkers(DistributedEvaluator coordinator, int workers) throws InterruptedException {
+        while (coordinator.getWorkers() != workers) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void silentWorkerTimesOut() throws Exception {
+        Player[] players = players(40);
+        int[] local = play(new MatchEvaluator(null), players);
+        try (DistributedEvaluator coordinator = new DistributedEvaluator(0, 4, 200);
+             Socket socket = new Socket("localhost", coordinator.getPort())) {
+            //says hello and then never answers, without closing its connection
+            WorkerProtocol.writeHello(new DataOutputStream(socket.getOutputStream()));
+            waitForWorkers(coordinator, 1);
+            assertArrayEquals(local, play(coordinator, players));
+            assertEquals(0, coordinator.getWorkers());
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void workerWithAnotherKernelIsRejected() throws Exception {
+        Player[] players = players(40);
+        int[] local = play(new MatchEvaluator(null), players);
+        try (DistributedEvaluator coordinator = new DistributedEvaluator(0, 4, 10000);
+             Socket socket = new Socket("localhost", coordinator.getPort())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(WorkerProtocol.MAGIC);
+            out.writeInt(WorkerProtocol.VERSION);
+            out.writeUTF("proc.sketches.OtherKernel");
+            out.flush();
+            //the coordinator closes the connection
+            assertEquals(-1, socket.getInputStream().read());
+            assertEquals(0, coordinator.getWorkers());
+            assertArrayEquals(local, play(coordinator, players));
+        }
+    }
+
+    /**
+     * returns a brain that ignores its inputs and turns left with one activation mode while it goes straight
+     * with the other: output 0 (left) is sigmoid(c), output 1 (straight) is sigmoid(sigmoid(sigmoid(z))) and
+     * c lies between the values the two modes give for sigmoid(sigmoid(z))
+     */
+    private static NeuralNetwork undecidedBrain(Activation mode, Activation other) {
+        NeuralNetwork brain = Player.randomBrain(2, new SplittableRandom(1));
+        double z = 0.3;
+        double[] chain = {z, z};
+        mode.apply(chain, 0, 1);
+        mode.apply(chain, 0, 1);
+        other.apply(chain, 1, 1);
+        other.apply(chain, 1, 1);
+        double c = (chain[0] + chain[1]) / 2;
+
+        double[] weights = brain.replaceableWeights();
+        Arrays.fill(weights, 0);
+        int[] sizes = brain.layerSizes;
+        //first hidden node: bias z
+        weights[brain.layerOffsets[0]] = z;
+        //second hidden layer, first node: the first node of the first hidden layer
+        weights[brain.layerOffsets[1] + 1] = 1;
+        //output 0: bias c, output 1: the first node of the second hidden layer, output 2: never chosen
+        int outputColumns = sizes[2] + 1;
+        weights[brain.layerOffsets[2]] = c;
+        weights[brain.layerOffsets[2] + outputColumns + 1] = 1;
+        weights[brain.layerOffsets[2] + 2 * outputColumns] = -10;
+        brain.setActivation(mode);
+        return brain;
+    }
+
+    @Test(timeout = 20000)
+    public void workerUsesTheActivationOfTheCoordinator() throws Exception {
+        //the worker builds its networks with the default mode, the players use another one
+        Activation mode = Activation.defaultMode() == Activation.TABLE ? Activation.EXACT : Activation.TABLE;
+        NeuralNetwork brain = undecidedBrain(mode, Activation.defaultMode());
+        double[] input = new double[brain.input_nodes];
+        double[] output = brain.feedForward(input);
+        brain.setActivation(Activation.defaultMode());
+        double[] otherOutput = brain.feedForward(input);
+        brain.setActivation(mode);
+        //the test only means something when the two modes decide differently
+        assertEquals(output[0] > output[1], otherOutput[1] > otherOutput[0]);
+
+        Player[] players = new Player[40];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new Player(2, brain);
+        }
+        int[] local = play(new MatchEvaluator(null), players);
+        try (DistributedEvaluator coordinator = new DistributedEvaluator(0, 4, 10000)) {
+            final Socket socket = new Socket("localhost", coordinator.getPort());
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        new EvaluationWorker(1).serve(socket);
+                    } catch (IOException e) {
+                        //the coordinator closed the connection
+                    }
+                }
+            });
+            worker.setDaemon(true);
+            worker.start();
+            waitForWorkers(coordinator, 1);
+            assertArrayEquals(local, play(coordinator, players));
+            assertEquals(1, coordinator.getWorkers());
+        }
+    }
+}
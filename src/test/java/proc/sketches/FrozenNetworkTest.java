@@ -0,0 +1,100 @@
+package proc.sketches;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FrozenNetworkTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static SensorCorpus corpus;
+
+    @BeforeClass
+    public static void recordCorpus() {
+        corpus = Decisions.corpus();
+    }
+
+    private static int changedDecisions(NeuralNetwork[] brains, FrozenNetwork.Precision precision) {
+        int differences = 0;
+        for (NeuralNetwork brain : brains) {
+            Player original = new Player(brain);
+            Player frozen = new Player(brain);
+            frozen.freezeBrain(precision);
+            differences += Decisions.changed(original, frozen, corpus);
+        }
+        return differences;
+    }
+
+    @Test
+    public void frozenWeightsAreSmaller() {
+        NeuralNetwork brain = Decisions.brains()[0];
+        int weights = brain.weightData().length;
+        assertEquals(4L * weights, brain.freeze(FrozenNetwork.Precision.FLOAT32).weightBytes());
+        //one byte per weight and a float scale per row
+        assertTrue(brain.freeze(FrozenNetwork.Precision.INT8).weightBytes() < 2L * weights);
+    }
+
+    @Test
+    public void float32KeepsTheDecisions() {
+        NeuralNetwork[] brains = Decisions.brains();
+        long decisions = (long) brains.length * corpus.size();
+        int differences = changedDecisions(brains, FrozenNetwork.Precision.FLOAT32);
+        assertTrue("FLOAT32 changed " + differences + " of " + decisions + " decisions",
+                differences <= 0.0001 * decisions);
+    }
+
+    @Test
+    public void int8KeepsAlmostAllDecisions() {
+        NeuralNetwork[] brains = Decisions.brains();
+        long decisions = (long) brains.length * corpus.size();
+        int differences = changedDecisions(brains, FrozenNetwork.Precision.INT8);
+        assertTrue("INT8 changed " + differences + " of " + decisions + " decisions",
+                differences <= 0.01 * decisions);
+    }
+
+    /**
+     * returns a player frozen from the current brain of the player
+     */
+    private static Player frozenCopy(Player player) {
+        Player copy = new Player(player.getBrain());
+        copy.freezeBrain(FrozenNetwork.Precision.FLOAT32);
+        return copy;
+    }
+
+    @Test
+    public void mutatingRefreezesTheBrain() {
+        Player frozen = new Player(Decisions.brains()[0].copy());
+        frozen.freezeBrain(FrozenNetwork.Precision.FLOAT32);
+        Player before = frozenCopy(frozen);
+        //a mutation moves the weights by at most 0.1, mutate until the decisions of the brain change
+        Player reference = before;
+        for (int i = 0; i < 200 && Decisions.changed(before, reference, corpus) == 0; i++) {
+            frozen.mutate(1);
+            reference = frozenCopy(frozen);
+        }
+        assertTrue(Decisions.changed(before, reference, corpus) > 0);
+        assertEquals(0, Decisions.changed(reference, frozen, corpus));
+    }
+
+    @Test
+    public void changingTheBrainRefreezesIt() throws IOException {
+        NeuralNetwork[] brains = Decisions.brains();
+        File file = folder.newFile("brain.bin");
+        brains[1].saveWeights(file.getPath());
+        Player frozen = new Player(brains[0].copy());
+        frozen.freezeBrain(FrozenNetwork.Precision.FLOAT32);
+        Player before = frozenCopy(frozen);
+        frozen.changeBrain(file.getPath());
+        Player reference = frozenCopy(frozen);
+        assertTrue(Decisions.changed(before, reference, corpus) > 0);
+        assertEquals(0, Decisions.changed(reference, frozen, corpus));
+    }
+}
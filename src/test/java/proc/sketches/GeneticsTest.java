@@ -0,0 +1,74 @@
+package proc.sketches;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Evolves small populations for a few generations
+ */
+public class GeneticsTest {
+    private static final int POPULATION = 40;
+    private static final int ELITES = 20;
+
+    private static Genetics population() {
+        Genetics genetics = new Genetics(POPULATION, 3, 20, 2, 17);
+        genetics.setExecutor(null);
+        genetics.setElitism(ELITES);
+        return genetics;
+    }
+
+    /**
+     * returns the slots of the best players of the scores, as ranked by TopK
+     */
+    private static boolean[] elites(int[] scores) {
+        TopK top = new TopK(ELITES);
+        for (int i = 0; i < scores.length; i++) {
+            top.offer(i, scores[i]);
+        }
+        boolean[] elite = new boolean[scores.length];
+        for (int slot : top.members()) {
+            elite[slot] = true;
+        }
+        return elite;
+    }
+
+    @Test
+    public void cacheSkipsMatchesBetweenElites() {
+        Genetics genetics = population();
+        genetics.setFitnessCache(10000);
+        genetics.evolve();
+        FitnessCache cache = genetics.getFitnessCache();
+        assertEquals(0, cache.getHits());
+        assertEquals(POPULATION / 2, cache.getMisses());
+
+        //the elites stay in their slots, so two elites that met play the same match with the same seed
+        boolean[] elite = elites(genetics.getLastScores());
+        int repeated = 0;
+        for (int match = 0; match < POPULATION / 2; match++) {
+            if (elite[2 * match] && elite[2 * match + 1]) {
+                repeated++;
+            }
+        }
+        assertTrue(repeated > 0);
+        genetics.evolve();
+        assertTrue(cache.getHits() >= repeated);
+        assertEquals(POPULATION, cache.getHits() + cache.getMisses());
+    }
+
+    @Test
+    public void cachedGenerationsEvolveLikePlayedOnes() {
+        Genetics played = population();
+        played.setFixedMatchSeeds(true);
+        Genetics cached = population();
+        cached.setFitnessCache(10000);
+        for (int generation = 0; generation < 4; generation++) {
+            played.evolve();
+            cached.evolve();
+            assertArrayEquals(played.getLastScores(), cached.getLastScores());
+        }
+        assertTrue(cached.getFitnessCache().getHits() > 0);
+    }
+}
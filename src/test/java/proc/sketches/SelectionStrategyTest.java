@@ -0,0 +1,131 @@
+package proc.sketches;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+/**
+ * Draws many parents from a small population with known fitness and compares how often every
+ * player is picked with the chance the strategy should give it
+ */
+public class SelectionStrategyTest {
+    private static final int DRAWS = 200000;
+    private static final double TOLERANCE = 0.01;
+
+    /**
+     * returns 10 players with the fitness 0 to 9, in a mixed up order: player i has fitness fitness(i)
+     */
+    private static Player[] population() {
+        Player[] players = new Player[10];
+        SplittableRandom random = new SplittableRandom(3);
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new Player(2, Player.randomBrain(2, random));
+            players[i].setFitness(fitness(i));
+        }
+        return players;
+    }
+
+    private static int fitness(int index) {
+        return index * 7 % 10;
+    }
+
+    /**
+     * returns the share of the draws that picked every player
+     */
+    private static double[] frequencies(SelectionStrategy selection, Player[] players) {
+        selection.prepare(players);
+        SplittableRandom random = new SplittableRandom(11);
+        double[] picked = new double[players.length];
+        for (int i = 0; i < DRAWS; i++) {
+            picked[selection.select(random)]++;
+        }
+        for (int i = 0; i < picked.length; i++) {
+            picked[i] /= DRAWS;
+        }
+        return picked;
+    }
+
+    private static void assertProportional(SelectionStrategy selection) {
+        Player[] players = population();
+        double[] picked = frequencies(selection, players);
+        for (int i = 0; i < players.length; i++) {
+            assertEquals("player " + i, fitness(i) / 45.0, picked[i], TOLERANCE);
+        }
+        //the player with fitness 0 is never picked
+        assertEquals(0, picked[0], 0);
+    }
+
+    @Test
+    public void aliasIsFitnessProportionate() {
+        assertProportional(new AliasSelection());
+    }
+
+    @Test
+    public void cumulativeIsFitnessProportionate() {
+        assertProportional(new CumulativeSelection());
+    }
+
+    @Test
+    public void rankWeighsByPlace() {
+        Player[] players = population();
+        double[] picked = frequencies(new RankSelection(), players);
+        for (int i = 0; i < players.length; i++) {
+            //the fitness equals the rank here, rank r has weight r + 1 of 55
+            assertEquals("player " + i, (fitness(i) + 1) / 55.0, picked[i], TOLERANCE);
+        }
+    }
+
+    @Test
+    public void truncationOnlyPicksTheFittest() {
+        Player[] players = population();
+        double[] picked = frequencies(new TruncationSelection(0.3), players);
+        for (int i = 0; i < players.length; i++) {
+            double expected = fitness(i) >= 7 ? 1 / 3.0 : 0;
+            assertEquals("player " + i, expected, picked[i], TOLERANCE);
+            if (fitness(i) < 7) {
+                assertEquals(0, picked[i], 0);
+            }
+        }
+    }
+
+    @Test
+    public void tournamentPicksTheBestOfItsContenders() {
+        Player[] players = population();
+        int size = 3;
+        double[] picked = frequencies(new TournamentSelection(size), players);
+        for (int i = 0; i < players.length; i++) {
+            //the player wins when it is drawn and all contenders are at most as fit
+            int rank = fitness(i);
+            double expected = (Math.pow(rank + 1, size) - Math.pow(rank, size)) / Math.pow(players.length, size);
+            assertEquals("player " + i, expected, picked[i], TOLERANCE);
+        }
+        //a tournament of one is a uniform pick
+        double[] uniform = frequencies(new TournamentSelection(1), players);
+        for (int i = 0; i < players.length; i++) {
+            assertEquals("player " + i, 0.1, uniform[i], TOLERANCE);
+        }
+    }
+
+    @Test
+    public void strategiesByName() {
+        assertTrue(SelectionStrategy.forName("alias") instanceof AliasSelection);
+        assertTrue(SelectionStrategy.forName("cumulative") instanceof CumulativeSelection);
+        assertTrue(SelectionStrategy.forName("rank") instanceof RankSelection);
+        assertTrue(SelectionStrategy.forName("tournament") instanceof TournamentSelection);
+        assertTrue(SelectionStrategy.forName("tournament:4") instanceof TournamentSelection);
+        assertTrue(SelectionStrategy.forName("truncation:0.2") instanceof TruncationSelection);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownStrategy() {
+        SelectionStrategy.forName("roulette");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void argumentOfAStrategyWithoutOne() {
+        SelectionStrategy.forName("rank:3");
+    }
+}
@@ -0,0 +1,122 @@
+package proc.sketches;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.SplittableRandom;
+import org.junit.Test;
+
+public class SuccessiveHalvingTest {
+    private static final int RADIUS = 4;
+    private static final int TILE_SIZE = 20;
+    private static final int MAX_GAME_TIME = 1000;
+
+    private static Player[] players(int count) {
+        SplittableRandom random = new SplittableRandom(11);
+        Player[] players = new Player[count];
+        for (int i = 0; i < count; i++) {
+            players[i] = new Player(2, Player.randomBrain(2, random));
+        }
+        return players;
+    }
+
+    private static int[] race(PopulationEvaluator evaluator, Player[] players) {
+        for (Player player : players) {
+            player.reset();
+        }
+        long[] seeds = Seeds.matchSeeds(5, players.length / 2);
+        new SuccessiveHalving().evaluate(evaluator, players, seeds, RADIUS, TILE_SIZE, MAX_GAME_TIME, new TopK(2));
+        int[] scores = new int[players.length];
+        for (int i = 0; i < players.length; i++) {
+            scores[i] = players[i].getScore();
+        }
+        return scores;
+    }
+
+    @Test
+    public void deadPlayersKeepTheirScore() {
+        Player player = new Player(2, Player.randomBrain(2, new SplittableRandom(1)));
+        player.setScore(3);
+        assertEquals(1 + 2.0 * 8, SuccessiveHalving.extrapolate(player, 125, 1000), 0);
+        player.kill();
+        assertEquals(3, SuccessiveHalving.extrapolate(player, 125, 1000), 0);
+    }
+
+    @Test
+    public void cachedResultsRaceLikePlayedMatches() {
+        Player[] players = players(60);
+        int[] played = race(new MatchEvaluator(null), players);
+        FitnessCache cache = new FitnessCache(10000);
+        PopulationEvaluator cached = cache.around(new MatchEvaluator(null));
+        assertArrayEquals(played, race(cached, players));
+        //the second time every match comes from the cache
+        assertArrayEquals(played, race(cached, players));
+        assertEquals(cache.getMisses(), cache.getHits());
+    }
+
+    @Test
+    public void workerResultsRaceLikeLocalMatches() throws Exception {
+        Player[] players = players(60);
+        int[] played = race(new MatchEvaluator(null), players);
+        try (DistributedEvaluator coordinator = new DistributedEvaluator(0, 4, 10000)) {
+            final Socket socket = new Socket("localhost", coordinator.getPort());
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        new EvaluationWorker(1).serve(socket);
+                    } catch (IOException e) {
+                        //the coordinator closed the connection
+                    }
+                }
+            });
+            worker.setDaemon(true);
+            worker.start();
+            while (coordinator.getWorkers() == 0) {
+                Thread.sleep(10);
+            }
+            assertArrayEquals(played, race(coordinator, players));
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void largeRoundsPairSurvivorsBestFirst() {
+        //every player has a fixed strength and dies with it as its score, so the estimates are the strengths
+        int count = 400000;
+        NeuralNetwork brain = Player.randomBrain(2, new SplittableRandom(1));
+        Player[] players = new Player[count];
+        final IdentityHashMap<Player, Integer> strength = new IdentityHashMap<Player, Integer>();
+        SplittableRandom random = new SplittableRandom(3);
+        for (int i = 0; i < count; i++) {
+            players[i] = new Player(2, brain);
+            strength.put(players[i], 1 + random.nextInt(1000));
+        }
+        final ArrayList<Player[]> rounds = new ArrayList<Player[]>();
+        PopulationEvaluator evaluator = new PopulationEvaluator() {
+            @Override
+            public void evaluate(Player[] round, long[] seeds, int radius, int tileSize, int maxGameTime, TopK best) {
+                rounds.add(round);
+                for (Player player : round) {
+                    player.setScore(strength.get(player));
+                    player.kill();
+                }
+            }
+        };
+        long[] seeds = Seeds.matchSeeds(5, count / 2);
+        new SuccessiveHalving().evaluate(evaluator, players, seeds, RADIUS, TILE_SIZE, MAX_GAME_TIME, new TopK(2));
+
+        assertEquals(4, rounds.size());
+        for (int r = 1; r < rounds.size(); r++) {
+            Player[] round = rounds.get(r);
+            assertEquals(rounds.get(r - 1).length / 2, round.length);
+            for (int j = 1; j < round.length; j++) {
+                assertTrue(strength.get(round[j - 1]) >= strength.get(round[j]));
+            }
+        }
+    }
+}
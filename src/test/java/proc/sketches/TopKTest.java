@@ -0,0 +1,71 @@
+package proc.sketches;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+/**
+ * Compares the players kept by a TopK with a full sort of all offered players
+ */
+public class TopKTest {
+
+    /**
+     * returns the indices of the k best of the keys by sorting all of them, on equal keys the lower index first
+     */
+    private static int[] sorted(final double[] keys, int k) {
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> keys[a] != keys[b] ? Double.compare(keys[b], keys[a]) : Integer.compare(a, b));
+        int[] best = new int[Math.min(k, keys.length)];
+        for (int i = 0; i < best.length; i++) {
+            best[i] = order[i];
+        }
+        return best;
+    }
+
+    @Test
+    public void keepsTheBestInOrder() {
+        SplittableRandom random = new SplittableRandom(5);
+        for (int k : new int[]{1, 2, 7, 500, 5000}) {
+            double[] keys = new double[10000];
+            for (int i = 0; i < keys.length; i++) {
+                //few distinct values, so many keys are equal
+                keys[i] = random.nextInt(300) - 100;
+            }
+            TopK top = new TopK(k);
+            for (int i = 0; i < keys.length; i++) {
+                top.offer(i, keys[i]);
+            }
+            int[] expected = sorted(keys, k);
+            assertArrayEquals("k = " + k, expected, top.best());
+            int[] members = top.members();
+            Arrays.sort(members);
+            Arrays.sort(expected);
+            assertArrayEquals("k = " + k, expected, members);
+            assertEquals(keys[sorted(keys, 1)[0]], top.bestKey(), 0);
+        }
+    }
+
+    @Test
+    public void fewerPlayersThanCapacity() {
+        TopK top = new TopK(10);
+        top.offer(3, 1);
+        top.offer(1, 5);
+        top.offer(2, 5);
+        assertArrayEquals(new int[]{1, 2, 3}, top.best());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void emptyHasNoBestKey() {
+        TopK top = new TopK(3);
+        top.offer(0, 7);
+        top.clear();
+        top.bestKey();
+    }
+}
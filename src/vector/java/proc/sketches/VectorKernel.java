@@ -0,0 +1,57 @@
+package proc.sketches;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Dense layer using the JDK Vector API, so the multiply-accumulate of every row and the sigmoid
+ * run over as many lanes as the CPU offers (4 doubles with AVX2, 8 with AVX-512).
+ * Rows are summed lane by lane with fused multiply-adds, so results can differ from the
+ * scalar kernel in the last bits. Only loaded through DenseKernel.select().
+ */
+class VectorKernel implements DenseKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    VectorKernel() {
+        if (SPECIES.length() < 2) {
+            throw new UnsupportedOperationException("No SIMD support for doubles on this CPU");
+        }
+    }
+
+    @Override
+    public void dense(double[] w, int weightOffset, double[] in, int inOffset, int columns,
+                      double[] out, int outOffset, int rows) {
+        int bound = SPECIES.loopBound(columns);
+        int index = weightOffset;
+        for (int i = 0; i < rows; i++) {
+            DoubleVector acc = DoubleVector.zero(SPECIES);
+            int j = 0;
+            for (; j < bound; j += SPECIES.length()) {
+                DoubleVector weights = DoubleVector.fromArray(SPECIES, w, index + j);
+                DoubleVector nodes = DoubleVector.fromArray(SPECIES, in, inOffset + j);
+                acc = weights.fma(nodes, acc);
+            }
+            double sum = acc.reduceLanes(VectorOperators.ADD);
+            for (; j < columns; j++) {
+                sum += w[index + j] * in[inOffset + j];
+            }
+            out[outOffset + i] = sum;
+            index += columns;
+        }
+    }
+
+    @Override
+    public void sigmoid(double[] nodes, int from, int count) {
+        int bound = SPECIES.loopBound(count);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, nodes, from + i);
+            DoubleVector denominator = x.neg().lanewise(VectorOperators.EXP).add(1);
+            DoubleVector.broadcast(SPECIES, 1).div(denominator).intoArray(nodes, from + i);
+        }
+        for (; i < count; i++) {
+            nodes[from + i] = 1 /(1 + Math.exp(-1 * nodes[from + i]));
+        }
+    }
+}